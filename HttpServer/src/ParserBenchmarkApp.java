@@ -0,0 +1,87 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+import http.common.HttpRequestParser;
+import util.StringUtil;
+
+/**
+ * La classe ParserBenchmarkApp mesure le temps d'analyse d'une entte de requte typique (longue URL de la
+ * Javadoc avec de nombreux paramtres, champs d'un navigateur) par {@link HttpRequestParser}. Pour comparer
+ * l'examen huit octets  la fois  l'examen octet par octet, excuter l'outil deux fois, la seconde avec
+ *  -Dhttp.wordScan=false  (voir {@link StringUtil#WORD_SCAN}).
+ *
+ * @author Christian Lesage
+ * @author Alexandre Tremblay
+ *
+ */
+public class ParserBenchmarkApp
+{
+	// Nombre d'analyses par srie
+	private final static int DEFAULT_ITERATIONS = 200000;
+
+	// Nombre de sries; les premires servent de mise en train et ne sont pas affiches
+	private final static int ROUNDS = 5;
+	private final static int WARMUP_ROUNDS = 2;
+
+	/**
+	 * Point d'entre de l'outil. Affiche le temps moyen d'une analyse pour chaque srie mesure.
+	 *
+	 * @param args Facultatif : nombre d'analyses par srie
+	 */
+	public static void main(String[] args)
+	{
+		int iterations = (args.length > 0) ? Integer.parseInt(args[0]) : DEFAULT_ITERATIONS;
+
+		StringBuilder url = new StringBuilder("/Javadoc/http/server/cache/SharedContentCache.html?is-external=true");
+
+		for (int i = 0; i < 30; i++)
+		{
+			url.append("&param").append(i).append("=value-").append(i * 7919).append("%2Fx");
+		}
+
+		String text = "GET " + url + " HTTP/1.1\r\n"
+				+ "Host: localhost:8089\r\n"
+				+ "User-Agent: Mozilla/5.0 (X11; Linux x86_64; rv:128.0) Gecko/20100101 Firefox/128.0\r\n"
+				+ "Accept: text/html,application/xhtml+xml,application/xml;q=0.9,*/*;q=0.8\r\n"
+				+ "Accept-Language: fr-CA,fr;q=0.8,en-US;q=0.5,en;q=0.3\r\n"
+				+ "Accept-Encoding: gzip, deflate, br\r\n"
+				+ "Referer: http://localhost:8089/Javadoc/http/server/cache/package-summary.html\r\n"
+				+ "Connection: keep-alive\r\n"
+				+ "Cookie: session=0123456789abcdef0123456789abcdef; theme=dark; lang=fr\r\n"
+				+ "\r\n";
+
+		ByteBuffer buf = ByteBuffer.wrap(text.getBytes(Charset.forName("ISO-8859-1")));
+		HttpRequestParser parser = new HttpRequestParser();
+
+		System.out.println(String.format("Entte de %d octets, URL de %d octets, examen huit octets  la fois : %b",
+				buf.limit(), url.length(), StringUtil.WORD_SCAN));
+
+		// Empche l'limination des analyses par le compilateur
+		long fields = 0;
+
+		for (int round = 0; round < ROUNDS; round++)
+		{
+			long start = System.nanoTime();
+
+			for (int i = 0; i < iterations; i++)
+			{
+				buf.position(0);
+				parser.reset();
+				parser.parse(buf);
+				fields += parser.getFieldCount();
+			}
+
+			long elapsed = System.nanoTime() - start;
+
+			if (round >= WARMUP_ROUNDS)
+			{
+				System.out.println(String.format("Srie %d : %d ns par analyse", round - WARMUP_ROUNDS + 1, elapsed / iterations));
+			}
+		}
+
+		if (fields != (long) ROUNDS * iterations * 8)
+		{
+			System.out.println("Rsultat d'analyse inattendu : " + fields + " champs");
+		}
+	}
+}
@@ -0,0 +1,99 @@
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+
+import http.server.Dispatcher;
+import http.server.ServerConfig;
+import http.server.cache.Precompressor;
+
+/**
+ * La classe PrecompressApp crit la version gzip ( .gz ) de chaque fichier compressible du site,  excuter
+ *  chaque dploiement. Le serveur sert ensuite ces versions sans copie aux clients qui acceptent gzip,
+ * plutt que de compresser  la vole.
+ *
+ * @author Christian Lesage
+ * @author Alexandre Tremblay
+ *
+ */
+public class PrecompressApp
+{
+	private final static String DEFAULT_CONFIG_FILE = "server.cfg";
+
+	/**
+	 * Point d'entre de l'outil. Prcompresse le site dcrit par le fichier de configuration.
+	 *
+	 * @param args Facultatif : chemin du fichier de configuration  utiliser, puis nombre de threads
+	 */
+	public static void main(String[] args)
+	{
+		String userDir = System.getProperties().getProperty("user.dir");
+		String fileSeparator = System.getProperties().getProperty("file.separator");
+
+		Properties properties = new Properties();
+		InputStream is = null;
+		try
+		{
+			// Lit le fichier de configuration spcifi dans la ligne de commande, sinon celui du rpertoire courant
+			is = new FileInputStream((args.length > 0) ? args[0] : userDir + fileSeparator + PrecompressApp.DEFAULT_CONFIG_FILE);
+			properties.load(is);
+		}
+		catch (FileNotFoundException e)
+		{
+			System.out.println("Impossible de trouver le fichier de configuration; utilisation de la configuration par dfaut.");
+		}
+		catch (IOException e)
+		{
+			e.printStackTrace();
+		}
+		finally
+		{
+			if (is != null)
+			{
+				try { is.close(); } catch (IOException unused) {}
+			}
+		}
+
+		ServerConfig config = new ServerConfig(properties);
+
+		int parallelism = Runtime.getRuntime().availableProcessors();
+
+		if (args.length > 1)
+		{
+			try
+			{
+				parallelism = Math.max(1, Integer.parseInt(args[1]));
+			}
+			catch (NumberFormatException e)
+			{
+			}
+		}
+
+		// Mme dossier que celui servi par le serveur
+		File f = new File(config.getServerPath());
+		String serverPath = (f.isDirectory() ? f.getAbsolutePath() : ".") + fileSeparator;
+		File siteRoot = new File(serverPath + config.getSiteFolder());
+
+		if (!siteRoot.isDirectory())
+		{
+			siteRoot = new File(serverPath + "www");
+		}
+
+		System.out.println("Prcompression de " + siteRoot.getAbsolutePath() + " (" + parallelism + " threads)...");
+
+		long start = System.currentTimeMillis();
+
+		Precompressor precompressor = new Precompressor(Dispatcher.loadMimeTypes(serverPath), config.getCompressionMinSize());
+		precompressor.run(siteRoot, parallelism);
+
+		System.out.println(String.format("%d fichiers crits, %d dj  jour, %d checs en %d ms.",
+				precompressor.getWritten(), precompressor.getUpToDate(), precompressor.getFailed(), System.currentTimeMillis() - start));
+
+		if (precompressor.getFailed() > 0)
+		{
+			System.exit(1);
+		}
+	}
+}
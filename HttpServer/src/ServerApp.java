@@ -2,11 +2,10 @@ import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
-import java.net.InetAddress;
-import java.net.UnknownHostException;
 import java.util.Properties;
 
 import http.server.Dispatcher;
+import http.server.ServerConfig;
 
 /**
  * La classe ServerApp sert  lancer le thread rpartiteur de requtes.
@@ -29,12 +28,6 @@ public class ServerApp
 		String userDir = System.getProperties().getProperty("user.dir");
 		String fileSeparator = System.getProperties().getProperty("file.separator");
 
-		String serverPath = "";
-		String siteFolder = "";
-		String ipAddress = "";
-		int portNum = 0;
-		int duration = 0;
-
 		Properties properties = new Properties();
 		InputStream is = null;
 		try
@@ -70,35 +63,6 @@ public class ServerApp
 			try
 			{
 				properties.load(is);
-				serverPath = properties.getProperty("server_path");
-				siteFolder = properties.getProperty("site_folder");
-				
-				try
-				{
-					ipAddress = InetAddress.getByName(properties.getProperty("host")).getHostAddress();
-				}
-				catch (UnknownHostException e)
-				{
-					ipAddress = "127.0.0.1";
-				}
-				
-				try 
-				{
-					portNum = Integer.parseInt(properties.getProperty("port_num"));
-				}
-				catch (NumberFormatException e)
-				{
-					portNum = 80;
-				}
-				
-				try 
-				{
-					duration = Integer.parseInt(properties.getProperty("duration"));
-				}
-				catch (NumberFormatException e)
-				{
-					duration = 0;
-				}
 			}
 			catch (IOException e)
 			{
@@ -106,16 +70,33 @@ public class ServerApp
 			}			
 		}
 		
+		ServerConfig config = new ServerConfig(properties);
+		
 		// Indique la configuration utilise  
 		System.out.println("Configuration : ");
-		System.out.println("Chemin absolu des fichiers du serveur : " + serverPath);
-		System.out.println("Chemin relatif du site Web : " + siteFolder);
-		System.out.println("Adresse IP : " + ipAddress);
-		System.out.println("Numro du port : " + portNum);
+		System.out.println("Chemin absolu des fichiers du serveur : " + config.getServerPath());
+		System.out.println("Chemin relatif du site Web : " + config.getSiteFolder());
+		System.out.println("Adresse IP : " + config.getIpAddress());
+		System.out.println("Numro du port : " + config.getPortNum());
+		System.out.println("Mode d'E/S : " + config.getIoMode());
+		if (config.isNonBlocking())
+		{
+			System.out.println("Boucles d'vnements : " + config.getEventLoops());
+		}
+		else
+		{
+			System.out.println("Type de threads : " + config.getThreadMode());
+			if (!config.isVirtualThreads())
+			{
+				System.out.println("Threads de travail : " + config.getPoolSize());
+				System.out.println("File d'attente : " + config.getQueueDepth() + " (politique de rejet : " + config.getRejectionPolicy() + ")");
+			}
+			System.out.println("Dbit max. par connexion : " + (config.getMaxRate() > 0 ? config.getMaxRate() + " Ko/s" : "illimit (envoi sans copie)"));
+		}
 		System.out.print("Dure : ");
-		if (duration > 0)
+		if (config.getDuration() > 0)
 		{
-			System.out.println(duration + " secondes");
+			System.out.println(config.getDuration() + " secondes");
 		}
 		else
 		{
@@ -125,7 +106,7 @@ public class ServerApp
 		System.out.println();
 
 		// Dmarre le rpartiteur de requtes
-		Dispatcher dispatcher = new Dispatcher(serverPath, siteFolder, ipAddress, portNum);
+		Dispatcher dispatcher = new Dispatcher(config);
 		Thread dispatcherThread = new Thread(dispatcher);
 		dispatcherThread.start();
 		
@@ -134,12 +115,12 @@ public class ServerApp
 		try
 		{
 			// Si une dure d'excution a t spcifie
-			if (duration > 0)
+			if (config.getDuration() > 0)
 			{
 				int t = 0;
 				
 				// Attend la fin du dlai ou la mort du thread 
-				while (t < 2 * duration && dispatcherThread.isAlive())
+				while (t < 2 * config.getDuration() && dispatcherThread.isAlive())
 				{
 					Thread.sleep(500);
 					t++;
@@ -3,10 +3,8 @@
  */
 package http.common;
 
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.util.HashMap;
@@ -93,6 +91,16 @@ public abstract class HttpHeader
 		this.fields = new HashMap<String, String>();
 	}
 	
+	/**
+	 * Remet le header dans son tat initial pour qu'il puisse servir  nouveau.
+	 */
+	public void reset()
+	{
+		this.text = null;
+		this.protocol = "";
+		this.fields.clear();
+	}
+	
 	/**
 	 * Analyse l'entte de la requte ou de la rponse reue et la dcompose en lments.
 	 */
@@ -104,29 +112,54 @@ public abstract class HttpHeader
 	public abstract void make() throws BadHeaderException;
 	
 	/**
-	 * Reoit un header sur la stream d'entre spcifie.
+	 * Reoit un header sur la stream d'entre spcifie. La lecture s'arrte  la ligne vide qui termine 
+	 * le header : les octets qui suivent (contenu, requtes suivantes d'un pipeline) restent dans la stream. 
+	 * Comme la lecture se fait octet par octet, la stream devrait tre munie d'un tampon 
+	 * (p. ex. BufferedInputStream) conserv d'un appel  l'autre.
 	 * 
 	 * @param is InputStream pour la lecture du header
 	 * @throws IOException
 	 */
 	public void receive(InputStream is) throws IOException
 	{
-		BufferedReader in = new BufferedReader(new InputStreamReader(is));
-
-		String headerText = new String();
-		String line;
+		StringBuilder headerText = new StringBuilder();
+		StringBuilder line = new StringBuilder();
+		int b;
 		
-		// Lit l'en-tte (header)
-		do 
+		// Lit l'en-tte (header) ligne par ligne jusqu' la ligne vide ou la fin de la stream
+		while ((b = is.read()) >= 0)
 		{
-			if ((line = in.readLine()) != null)
+			if (b == '\n')
 			{
-				headerText += line + "\r\n";
+				// Ignore le CR qui prcde le LF
+				if (line.length() > 0 && line.charAt(line.length() - 1) == '\r')
+				{
+					line.setLength(line.length() - 1);
+				}
+				
+				headerText.append(line).append("\r\n");
+				
+				if (line.length() == 0)
+				{
+					break;
+				}
+				
+				line.setLength(0);
 			}
+			else
+			{
+				// Les octets de l'entte sont interprts en ISO-8859-1
+				line.append((char) b);
+			}
+		}
+		
+		// Dernire ligne non termine par un LF
+		if (b < 0 && line.length() > 0)
+		{
+			headerText.append(line).append("\r\n");
+		}
 
-		} while (line != null && !line.isEmpty());
-
-		this.text = headerText;
+		this.text = headerText.toString();
 	}
 	
 	/**
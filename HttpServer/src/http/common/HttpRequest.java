@@ -16,6 +16,16 @@ public class HttpRequest
 		this.header = new HttpRequestHeader();
 	}
 	
+	/**
+	 * Remet la requte dans son tat initial pour qu'elle puisse servir  nouveau 
+	 * (p. ex. pour la requte suivante sur une connexion persistante).
+	 */
+	public void reset()
+	{
+		this.header.reset();
+		this.content = null;
+	}
+	
 	/**
 	 * @param os
 	 * @throws IOException
@@ -3,14 +3,16 @@
  */
 package http.common;
 
-import static util.StringUtil.bytesToString;
-import static util.StringUtil.isAscii;
-import static util.StringUtil.isValidUtf8;
 import static util.StringUtil.split;
 import static util.StringUtil.join;
-import static util.StringUtil.unescape;
+import static util.StringUtil.unescapeToString;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -27,6 +29,26 @@ import java.util.regex.Pattern;
  */
 public class HttpRequestHeader extends HttpHeader
 {
+	// Mthodes reconnues
+	private static final String[] METHODS = {"GET", "HEAD", "POST", "PUT", "DELETE", "TRACE", "OPTIONS", "CONNECT", "PATCH"};
+	private static final List<String> METHOD_LIST = Arrays.asList(METHODS);
+	
+	// Versions du protocole courantes
+	private static final String[] PROTOCOLS = {"HTTP/1.1", "HTTP/1.0"};
+	
+	// Noms des champs courants, rutiliss plutt que recrs  chaque requte; un nom reu dans une autre casse 
+	// prend celle de cette liste
+	private static final String[] COMMON_FIELDS = {"Host", "Connection", "Accept", "Accept-Encoding", "Accept-Language", 
+		"Accept-Charset", "User-Agent", "Referer", "Cookie", "Cache-Control", "Pragma", "If-Modified-Since", "If-None-Match", 
+		"If-Range", "Range", "Keep-Alive", "Upgrade-Insecure-Requests", "DNT", "Origin", "Authorization", "Content-Length", 
+		"Content-Type"};
+	
+	// Jeu de caractres des octets de l'entte
+	private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+	
+	// Nombre max. de plages acceptes dans le champ Range; au-del, le contenu complet est envoy
+	private static final int MAX_BYTE_RANGES = 32;
+	
 	// Mthode de la requte (GET, PUT, POST, HEAD, etc.)
 	protected String method;
 	
@@ -42,6 +64,15 @@ public class HttpRequestHeader extends HttpHeader
 	// Liste des types MIME accepts 
 	protected ArrayList<String> acceptList;
 	
+	// Codages de contenu accepts (champ Accept-Encoding), avec leur prfrence (valeur q, de 0  1)
+	protected Map<String, Float> acceptEncodings;
+	
+	// Indique si l'entte a t reue par un parseur : ses lments sont dj extraits
+	private boolean isParsed;
+	
+	// Erreur signale par le parseur (null s'il n'y en a pas)
+	private String parseError;
+	
 	/**
 	 * Construit un header.
 	 * 
@@ -54,6 +85,89 @@ public class HttpRequestHeader extends HttpHeader
 		this.parameters = new HashMap<String, String>();
 		this.fields = new HashMap<String, String>();
 		this.acceptList = new ArrayList<String>();
+		this.acceptEncodings = new HashMap<String, Float>();
+	}
+	
+	/* (non-Javadoc)
+	 * @see http.common.HttpHeader#reset()
+	 */
+	@Override
+	public void reset()
+	{
+		super.reset();
+		this.method = "";
+		this.fullPath = "";
+		this.path = "";
+		this.parameters.clear();
+		this.acceptList.clear();
+		this.acceptEncodings.clear();
+		this.isParsed = false;
+		this.parseError = null;
+	}
+	
+	/**
+	 * Reoit l'entte analyse par le parseur spcifi. La mthode, le chemin, la version et les champs sont extraits 
+	 * directement des octets du tampon; {@link #parse()} n'a plus qu' les valider. Si le parseur est en erreur, 
+	 * c'est {@link #parse()} qui la signale.
+	 * 
+	 * @param parser parseur qui a termin l'analyse de l'entte
+	 * @param buf tampon (avec tableau accessible) o l'entte a t analyse, dont les octets n'ont pas t dplacs depuis
+	 */
+	public void receive(HttpRequestParser parser, ByteBuffer buf)
+	{
+		byte[] a = buf.array();
+		int base = buf.arrayOffset();
+		
+		this.isParsed = true;
+		
+		if (!parser.isComplete())
+		{
+			this.parseError = parser.getError();
+			this.text = "";
+			return;
+		}
+		
+		this.text = new String(a, base + parser.getHeaderOffset(), parser.getHeaderLength(), ISO_8859_1);
+		this.method = toString(a, base + parser.getMethodOffset(), parser.getMethodLength(), METHODS, false);
+		this.fullPath = new String(a, base + parser.getTargetOffset(), parser.getTargetLength(), ISO_8859_1);
+		this.protocol = toString(a, base + parser.getVersionOffset(), parser.getVersionLength(), PROTOCOLS, false);
+		
+		for (int i = 0; i < parser.getFieldCount(); i++)
+		{
+			// Comme auparavant, un champ sans valeur est ignor
+			if (parser.getValueLength(i) > 0)
+			{
+				String name = toString(a, base + parser.getNameOffset(i), parser.getNameLength(i), COMMON_FIELDS, true);
+				this.fields.put(name, new String(a, base + parser.getValueOffset(i), parser.getValueLength(i), ISO_8859_1));
+			}
+		}
+	}
+	
+	// Retourne la chane de la liste qui correspond aux octets spcifis (sans gard  la casse des lettres si demand, 
+	// comme pour les noms de champs), ou une nouvelle chane si aucune ne correspond. La mthode et la version 
+	// sont sensibles  la casse.
+	private static String toString(byte[] a, int offset, int length, String[] known, boolean ignoreCase)
+	{
+		for (String s : known)
+		{
+			if (s.length() == length)
+			{
+				int i = 0;
+				
+				while (i < length && (a[offset + i] == s.charAt(i) 
+						|| (ignoreCase && Character.isLetter(s.charAt(i)) && (a[offset + i] | 0x20) == (s.charAt(i) | 0x20))))
+				{
+					i++;
+				}
+				
+				if (i == length)
+				{
+					return s;
+				}
+			}
+		}
+		
+		return new String(a, offset, length, ISO_8859_1);
 	}
 	
 	/* (non-Javadoc)
@@ -91,7 +205,29 @@ public class HttpRequestHeader extends HttpHeader
 	 */
 	public void parse() throws BadHeaderException
 	{
-		if (this.text != null && !this.text.isEmpty())
+		if (this.isParsed)
+		{
+			if (this.parseError != null)
+			{
+				throw new BadHeaderException(this.parseError);
+			}
+			
+			// Mmes exigences que l'analyse de la ligne de requte par expression rgulire
+			if (!METHOD_LIST.contains(this.method) || !this.fullPath.startsWith("/") 
+					|| !this.protocol.startsWith("HTTP/") || this.protocol.length() == 5)
+			{
+				throw new BadHeaderException();
+			}
+			
+			this.setFullPath(this.fullPath);
+			this.parseFieldValues();
+			
+			if (this.protocol.equals("HTTP/1.1") && !this.fields.containsKey("Host"))
+			{
+				throw new BadHeaderException("Entte incomplte. Le champ Host est obligatoire.");
+			}
+		}
+		else if (this.text != null && !this.text.isEmpty())
 		{
 			ArrayList<String> headerLines = split(this.text, "\r\n", true);
 
@@ -132,16 +268,7 @@ public class HttpRequestHeader extends HttpHeader
 	{
 		ArrayList<String> fullPathParts = split(this.fullPath, "?");
 
-		byte[] pathBytes = unescape(fullPathParts.get(0));
-
-		if (!isAscii(pathBytes) && isValidUtf8(pathBytes))
-		{
-			this.path = bytesToString(pathBytes, "UTF-8");
-		}
-		else
-		{
-			this.path = bytesToString(pathBytes, DEFAULT_URL_ENCODING);
-		}
+		this.path = unescapeToString(fullPathParts.get(0));
 
 		if (fullPathParts.size() > 1)
 		{
@@ -155,7 +282,13 @@ public class HttpRequestHeader extends HttpHeader
 	protected void parseFields(List<String> fieldLines)
 	{
 		super.parseFields(fieldLines);
-
+		
+		this.parseFieldValues();
+	}
+	
+	// Analyse les valeurs des champs qui en ont une structure (Accept, Accept-Encoding)
+	private void parseFieldValues()
+	{
 		if (this.fields.containsKey("Accept"))
 		{
 			this.acceptList = split(this.getField("Accept"), ",");
@@ -165,6 +298,44 @@ public class HttpRequestHeader extends HttpHeader
 				this.acceptList.set(i, this.acceptList.get(i).trim());
 			}
 		}
+		
+		if (this.fields.containsKey("Accept-Encoding"))
+		{
+			this.parseAcceptEncoding(this.getField("Accept-Encoding"));
+		}
+	}
+	
+	// Analyse le champ Accept-Encoding (p. ex.  gzip;q=1.0, deflate;q=0.5, *;q=0 )
+	private void parseAcceptEncoding(String value)
+	{
+		for (String item : split(value, ","))
+		{
+			ArrayList<String> parts = split(item, ";");
+			String coding = parts.get(0).trim().toLowerCase();
+			float quality = 1;
+			
+			for (int i = 1; i < parts.size(); i++)
+			{
+				String param = parts.get(i).trim();
+				
+				if (param.startsWith("q=") || param.startsWith("Q="))
+				{
+					try
+					{
+						quality = Math.max(0, Math.min(1, Float.parseFloat(param.substring(2).trim())));
+					}
+					catch (NumberFormatException e) // Valeur invalide : codage refus
+					{
+						quality = 0;
+					}
+				}
+			}
+			
+			if (!coding.isEmpty())
+			{
+				this.acceptEncodings.put(coding, quality);
+			}
+		}
 	}
 
 	// Analyse les paramtres GET de la requte
@@ -178,16 +349,7 @@ public class HttpRequestHeader extends HttpHeader
 				ArrayList<String> paramParts = split(param, "=");
 				for (int i = 0; i < 2 && i < paramParts.size(); i++)
 				{
-					byte[] paramPartBytes = unescape(paramParts.get(i));
-
-					if (!isAscii(paramPartBytes) && isValidUtf8(paramPartBytes)) 
-					{
-						paramParts.set(i, bytesToString(paramPartBytes, "UTF-8")); 
-					}
-					else
-					{
-						paramParts.set(i, bytesToString(paramPartBytes, DEFAULT_URL_ENCODING)); 
-					}
+					paramParts.set(i, unescapeToString(paramParts.get(i)));
 				}
 
 				this.parameters.put(paramParts.get(0), paramParts.size() == 2 ? paramParts.get(1) : null);
@@ -206,6 +368,203 @@ public class HttpRequestHeader extends HttpHeader
 		return acceptList.contains(mimeType);
 	}
 
+	/**
+	 * Retourne la prfrence du client pour le codage de contenu spcifi (gzip, deflate, etc.), 
+	 * d'aprs le champ Accept-Encoding de la requte. Un codage non mentionn prend la prfrence 
+	 * de  * , sauf  identity , qui est toujours accept  moins d'tre refus explicitement.
+	 * 
+	 * @param coding codage de contenu, en minuscules
+	 * @return prfrence de 0 (refus)  1 (prfr)
+	 */
+	public float getEncodingQuality(String coding)
+	{
+		Float quality = this.acceptEncodings.get(coding);
+		
+		if (quality == null)
+		{
+			quality = this.acceptEncodings.get("*");
+		}
+		
+		if (quality == null)
+		{
+			quality = coding.equals("identity") ? 1f : 0f;
+		}
+		
+		return quality;
+	}
+
+	/**
+	 * Indique si l'tiquette d'entit spcifie figure dans un champ conditionnel de la requte (If-None-Match, 
+	 * If-Match, If-Range), qui contient  *  ou une liste d'tiquettes spares par des virgules. La comparaison 
+	 * faible ignore le prfixe  W/ ; la comparaison forte exige que les deux tiquettes soient fortes et identiques.
+	 * 
+	 * @param field nom du champ  consulter
+	 * @param etag tiquette d'entit, entre guillemets (prcde de  W/  si elle est faible)
+	 * @param strong vrai pour une comparaison forte, faux pour une comparaison faible
+	 * @return vrai si le champ est prsent et que l'tiquette y figure (ou qu'il contient  * )
+	 */
+	public boolean matchesETag(String field, String etag, boolean strong)
+	{
+		String value = this.getField(field);
+		
+		if (value == null || etag == null)
+		{
+			return false;
+		}
+		
+		boolean weak = etag.startsWith("W/");
+		
+		if (strong && weak)
+		{
+			return false;
+		}
+		
+		String opaque = weak ? etag.substring(2) : etag;
+		
+		for (String tag : value.split(","))
+		{
+			tag = tag.trim();
+			
+			if (tag.equals("*"))
+			{
+				return true;
+			}
+			
+			if (tag.startsWith("W/"))
+			{
+				if (strong)
+				{
+					continue;
+				}
+				
+				tag = tag.substring(2);
+			}
+			
+			if (tag.equals(opaque))
+			{
+				return true;
+			}
+		}
+		
+		return false;
+	}
+
+	/**
+	 * Retourne les plages d'octets demandes par le champ Range de la requte (p. ex.  bytes=0-99, 200-, -50 ), 
+	 * pour un contenu de la taille spcifie. Les plages sont tries et celles qui se chevauchent ou se touchent 
+	 * sont fusionnes; les plages qui commencent aprs la fin du contenu sont ignores. 
+	 * 
+	 * @param length taille du contenu en octets
+	 * @return plages demandes, chacune forme de la position de son premier et de son dernier octet; tableau vide 
+	 * si aucune plage n'est satisfaisable; null si le champ est absent, invalide ou demande trop de plages, auquel 
+	 * cas le contenu complet doit tre envoy
+	 */
+	public long[][] getByteRanges(long length)
+	{
+		String value = this.getField("Range");
+		
+		if (value == null)
+		{
+			return null;
+		}
+		
+		value = value.trim();
+		
+		if (!value.regionMatches(true, 0, "bytes=", 0, 6))
+		{
+			return null;
+		}
+		
+		String[] specs = value.substring(6).split(",");
+		
+		if (specs.length > MAX_BYTE_RANGES)
+		{
+			return null;
+		}
+		
+		List<long[]> ranges = new ArrayList<long[]>(specs.length);
+		
+		for (String spec : specs)
+		{
+			spec = spec.trim();
+			int dash = spec.indexOf('-');
+			
+			if (dash < 0)
+			{
+				return null;
+			}
+			
+			long start;
+			long end;
+			
+			try
+			{
+				if (dash == 0)
+				{
+					// Plage finale : les n derniers octets
+					long suffix = Long.parseLong(spec.substring(1));
+					start = Math.max(0, length - suffix);
+					end = length - 1;
+					
+					if (suffix <= 0)
+					{
+						continue;
+					}
+				}
+				else
+				{
+					start = Long.parseLong(spec.substring(0, dash));
+					end = (dash == spec.length() - 1) ? length - 1 : Math.min(Long.parseLong(spec.substring(dash + 1)), length - 1);
+					
+					if (dash < spec.length() - 1 && Long.parseLong(spec.substring(dash + 1)) < start)
+					{
+						return null;
+					}
+				}
+			}
+			catch (NumberFormatException e)
+			{
+				return null;
+			}
+			
+			if (start < 0)
+			{
+				return null;
+			}
+			
+			if (start < length)
+			{
+				ranges.add(new long[] {start, end});
+			}
+		}
+		
+		Collections.sort(ranges, new Comparator<long[]>()
+		{
+			public int compare(long[] r1, long[] r2)
+			{
+				return (r1[0] < r2[0]) ? -1 : ((r1[0] == r2[0]) ? 0 : 1);
+			}
+		});
+		
+		List<long[]> merged = new ArrayList<long[]>(ranges.size());
+		
+		for (long[] range : ranges)
+		{
+			long[] last = merged.isEmpty() ? null : merged.get(merged.size() - 1);
+			
+			if (last != null && range[0] <= last[1] + 1)
+			{
+				last[1] = Math.max(last[1], range[1]);
+			}
+			else
+			{
+				merged.add(range);
+			}
+		}
+		
+		return merged.toArray(new long[merged.size()][]);
+	}
+
 	/**
 	 * Retourne la valeur du paramtre GET (query) spcifi
 	 * 
@@ -0,0 +1,502 @@
+package http.common;
+
+import java.nio.ByteBuffer;
+
+import util.StringUtil;
+
+/**
+ * La classe HttpRequestParser analyse l'entte d'une requte HTTP octet par octet, directement dans le tampon
+ * o elle est reue. L'analyse est incrmentale : l'entte peut arriver en plusieurs morceaux, et chaque appel
+ * de {@link #parse(ByteBuffer)} reprend l o le prcdent s'est arrt, sans relire les octets dj analyss.
+ * <p>
+ * Le parseur ne cre aucun objet : la mthode, la cible et la version de la requte, ainsi que le nom et
+ * la valeur de chaque champ, sont reprs par leur position dans le tampon. Les longues suites d'octets
+ * ordinaires de la cible et des valeurs sont examines huit octets  la fois (voir
+ * {@link StringUtil#WORD_SCAN}). Les lignes peuvent se terminer par CRLF ou par LF seul. La taille de
+ * l'entte et le nombre de champs sont borns; une entte qui dpasse ces limites ou qui est mal forme met
+ * le parseur en erreur.
+ * <p>
+ * Tant que l'entte est incomplte, la position du tampon reste au dbut de l'entte : le tampon peut donc tre
+ * compact entre deux appels. Une fois l'entte complte, la position est avance aprs la ligne vide qui
+ * la termine; les octets qui suivent (requtes suivantes d'un pipeline) restent dans le tampon. Les positions
+ * retournes par le parseur restent valides tant que les octets de l'entte ne sont pas dplacs.
+ *
+ * @author Christian Lesage
+ * @author Alexandre Tremblay
+ */
+public class HttpRequestParser
+{
+	/**
+	 * Taille max. par dfaut d'une entte en octets
+	 */
+	public static final int DEFAULT_MAX_HEADER_SIZE = 8192;
+
+	/**
+	 * Nombre max. par dfaut de champs d'une entte
+	 */
+	public static final int DEFAULT_MAX_FIELDS = 100;
+
+	// tats de l'analyse
+	private static final int METHOD = 0;
+	private static final int TARGET = 1;
+	private static final int VERSION = 2;
+	private static final int REQUEST_LINE_LF = 3;
+	private static final int LINE_START = 4;
+	private static final int NAME = 5;
+	private static final int VALUE_START = 6;
+	private static final int VALUE = 7;
+	private static final int FIELD_LF = 8;
+	private static final int END_LF = 9;
+	private static final int DONE = 10;
+	private static final int ERROR = 11;
+
+	// Taille max. d'une entte en octets
+	private final int maxHeaderSize;
+
+	// Positions des noms et des valeurs des champs, relatives au dbut de l'entte (fin exclusive)
+	private final int[] nameStarts;
+	private final int[] nameEnds;
+	private final int[] valueStarts;
+	private final int[] valueEnds;
+
+	// tat courant de l'analyse
+	private int state;
+
+	// Position du prochain octet  analyser, relative au dbut de l'entte
+	private int offset;
+
+	// Position du dbut de l'entte dans le tampon, connue une fois l'entte complte
+	private int base;
+
+	// Positions de la mthode, de la cible et de la version, relatives au dbut de l'entte
+	private int methodStart;
+	private int targetStart;
+	private int targetEnd;
+	private int versionStart;
+	private int versionEnd;
+
+	// Nombre de champs analyss
+	private int fieldCount;
+
+	// Position qui suit le dernier octet non blanc de la valeur en cours d'analyse
+	private int valueEnd;
+
+	// Description de l'erreur d'analyse (null s'il n'y en a pas)
+	private String error;
+
+	/**
+	 * Construit un parseur avec les limites par dfaut.
+	 */
+	public HttpRequestParser()
+	{
+		this(DEFAULT_MAX_HEADER_SIZE, DEFAULT_MAX_FIELDS);
+	}
+
+	/**
+	 * Construit un parseur.
+	 *
+	 * @param maxHeaderSize taille max. d'une entte en octets
+	 * @param maxFields nombre max. de champs d'une entte
+	 */
+	public HttpRequestParser(int maxHeaderSize, int maxFields)
+	{
+		this.maxHeaderSize = maxHeaderSize;
+		this.nameStarts = new int[maxFields];
+		this.nameEnds = new int[maxFields];
+		this.valueStarts = new int[maxFields];
+		this.valueEnds = new int[maxFields];
+		this.reset();
+	}
+
+	/**
+	 * Remet le parseur dans son tat initial pour analyser une nouvelle entte.
+	 */
+	public void reset()
+	{
+		this.state = METHOD;
+		this.offset = 0;
+		this.base = 0;
+		this.methodStart = 0;
+		this.fieldCount = 0;
+		this.error = null;
+	}
+
+	/**
+	 * Analyse les octets du tampon entre sa position et sa limite. Si l'entte est complte, la position est
+	 * avance aprs la ligne vide qui la termine. En cas d'erreur, la position est avance jusqu' la limite :
+	 * le reste du tampon ne peut plus tre interprt et la connexion devrait tre ferme aprs la rponse.
+	 *
+	 * @param buf tampon contenant l'entte  partir de sa position, qui doit rester la mme d'un appel  l'autre
+	 * @return vrai si l'analyse est termine (entte complte ou erreur), faux s'il faut plus d'octets
+	 */
+	@SuppressWarnings("fallthrough")
+	public boolean parse(ByteBuffer buf)
+	{
+		if (this.state == DONE || this.state == ERROR)
+		{
+			return true;
+		}
+
+		int start = buf.position();
+		int end = Math.min(buf.limit() - start, this.maxHeaderSize);
+		int i = this.offset;
+		int state = this.state;
+
+		for (; i < end && state != DONE && state != ERROR; i++)
+		{
+			// Les longues suites d'octets ordinaires de la cible et des valeurs sont sautes huit octets  la fois
+			if (StringUtil.WORD_SCAN && i + 8 <= end)
+			{
+				if (state == TARGET && StringUtil.isVisibleAscii(buf.getLong(start + i)))
+				{
+					i += 7;
+					continue;
+				}
+				
+				if (state == VALUE && StringUtil.isPrintableAscii(buf.getLong(start + i)) && buf.get(start + i + 7) != ' ')
+				{
+					this.valueEnd = i + 8;
+					i += 7;
+					continue;
+				}
+			}
+			
+			int b = buf.get(start + i) & 0xFF;
+
+			switch (state)
+			{
+				case METHOD:
+					if (b == ' ')
+					{
+						state = (i > this.methodStart) ? TARGET : this.fail("Mthode absente.");
+						this.targetStart = i + 1;
+					}
+					else if (i == this.methodStart && (b == '\r' || b == '\n'))
+					{
+						// Lignes vides tolres avant la ligne de requte
+						this.methodStart = i + 1;
+					}
+					else if (!isTokenChar(b))
+					{
+						state = this.fail("Mthode invalide.");
+					}
+					break;
+
+				case TARGET:
+					if (b == ' ')
+					{
+						state = (i > this.targetStart) ? VERSION : this.fail("Cible absente.");
+						this.targetEnd = i;
+						this.versionStart = i + 1;
+					}
+					else if (b <= ' ' || b == 0x7F)
+					{
+						state = this.fail("Cible invalide.");
+					}
+					break;
+
+				case VERSION:
+					if (b == '\r' || b == '\n')
+					{
+						this.versionEnd = i;
+						state = (i == this.versionStart) ? this.fail("Version absente.") : (b == '\r') ? REQUEST_LINE_LF : LINE_START;
+					}
+					else if (b <= ' ' || b == 0x7F)
+					{
+						state = this.fail("Version invalide.");
+					}
+					break;
+
+				case REQUEST_LINE_LF:
+				case FIELD_LF:
+					state = (b == '\n') ? LINE_START : this.fail("Fin de ligne invalide.");
+					break;
+
+				case LINE_START:
+					if (b == '\r')
+					{
+						state = END_LF;
+					}
+					else if (b == '\n')
+					{
+						state = DONE;
+					}
+					else if (b == ' ' || b == '\t')
+					{
+						// Les valeurs replies sur plusieurs lignes sont interdites (RFC 7230, section 3.2.4)
+						state = this.fail("Champ repli.");
+					}
+					else if (this.fieldCount == this.nameStarts.length)
+					{
+						state = this.fail("Trop de champs.");
+					}
+					else if (isTokenChar(b))
+					{
+						this.nameStarts[this.fieldCount] = i;
+						state = NAME;
+					}
+					else
+					{
+						state = this.fail("Nom de champ invalide.");
+					}
+					break;
+
+				case NAME:
+					if (b == ':')
+					{
+						this.nameEnds[this.fieldCount] = i;
+						state = VALUE_START;
+					}
+					else if (!isTokenChar(b))
+					{
+						state = this.fail("Nom de champ invalide.");
+					}
+					break;
+
+				case VALUE_START:
+					if (b == ' ' || b == '\t')
+					{
+						break;
+					}
+
+					this.valueStarts[this.fieldCount] = i;
+					this.valueEnd = i;
+					state = VALUE;
+
+					// Continue avec l'octet courant, qui fait partie de la valeur (ou la termine si elle est vide)
+
+				case VALUE:
+					if (b == '\r' || b == '\n')
+					{
+						this.valueEnds[this.fieldCount++] = this.valueEnd;
+						state = (b == '\r') ? FIELD_LF : LINE_START;
+					}
+					else if (b == ' ' || b == '\t')
+					{
+						// Les blancs ne font partie de la valeur que s'ils sont suivis d'autre chose
+					}
+					else if (b < ' ' || b == 0x7F)
+					{
+						state = this.fail("Valeur de champ invalide.");
+					}
+					else
+					{
+						this.valueEnd = i + 1;
+					}
+					break;
+
+				case END_LF:
+					state = (b == '\n') ? DONE : this.fail("Fin d'entte invalide.");
+					break;
+			}
+		}
+
+		this.offset = i;
+		this.state = state;
+
+		if (state == DONE)
+		{
+			this.base = start;
+			buf.position(start + i);
+			return true;
+		}
+
+		if (state != ERROR && i >= this.maxHeaderSize)
+		{
+			this.state = this.fail("Entte trop longue.");
+		}
+
+		if (this.state == ERROR)
+		{
+			buf.position(buf.limit());
+			return true;
+		}
+
+		return false;
+	}
+
+	// Met le parseur en erreur et retourne l'tat d'erreur
+	private int fail(String error)
+	{
+		this.error = error;
+		return ERROR;
+	}
+
+	// Indique si l'octet spcifi peut faire partie d'un jeton (mthode, nom de champ) selon la RFC 7230
+	private static boolean isTokenChar(int b)
+	{
+		return b > ' ' && b < 0x7F && "\"(),/:;<=>?@[\\]{}".indexOf(b) < 0;
+	}
+
+	/**
+	 * Indique si l'entte a t analyse au complet sans erreur.
+	 *
+	 * @return vrai si l'entte est complte
+	 */
+	public boolean isComplete()
+	{
+		return this.state == DONE;
+	}
+
+	/**
+	 * Indique si des octets d'une entte ont t reus (sans compter les lignes vides qui la prcdent).
+	 *
+	 * @return vrai si l'analyse d'une entte est commence
+	 */
+	public boolean isStarted()
+	{
+		return this.offset > this.methodStart || this.state != METHOD;
+	}
+
+	/**
+	 * Retourne la description de l'erreur d'analyse.
+	 *
+	 * @return description de l'erreur, ou null si l'entte est valide jusqu'ici
+	 */
+	public String getError()
+	{
+		return this.error;
+	}
+
+	/**
+	 * Met le parseur en erreur parce que la connexion a t ferme avant la fin de l'entte.
+	 */
+	public void fail()
+	{
+		this.state = this.fail("Entte incomplte.");
+	}
+
+	/**
+	 * Retourne la position du dbut de l'entte dans le tampon.
+	 *
+	 * @return position du premier octet de l'entte
+	 */
+	public int getHeaderOffset()
+	{
+		return this.base;
+	}
+
+	/**
+	 * Retourne la longueur de l'entte, ligne vide finale comprise.
+	 *
+	 * @return longueur de l'entte en octets
+	 */
+	public int getHeaderLength()
+	{
+		return this.offset;
+	}
+
+	/**
+	 * Retourne la position de la mthode de la requte dans le tampon.
+	 *
+	 * @return position du premier octet de la mthode
+	 */
+	public int getMethodOffset()
+	{
+		return this.base + this.methodStart;
+	}
+
+	/**
+	 * Retourne la longueur de la mthode de la requte.
+	 *
+	 * @return longueur de la mthode en octets
+	 */
+	public int getMethodLength()
+	{
+		return this.targetStart - 1 - this.methodStart;
+	}
+
+	/**
+	 * Retourne la position de la cible de la requte (chemin complet de la ressource) dans le tampon.
+	 *
+	 * @return position du premier octet de la cible
+	 */
+	public int getTargetOffset()
+	{
+		return this.base + this.targetStart;
+	}
+
+	/**
+	 * Retourne la longueur de la cible de la requte.
+	 *
+	 * @return longueur de la cible en octets
+	 */
+	public int getTargetLength()
+	{
+		return this.targetEnd - this.targetStart;
+	}
+
+	/**
+	 * Retourne la position de la version du protocole (p. ex. HTTP/1.1) dans le tampon.
+	 *
+	 * @return position du premier octet de la version
+	 */
+	public int getVersionOffset()
+	{
+		return this.base + this.versionStart;
+	}
+
+	/**
+	 * Retourne la longueur de la version du protocole.
+	 *
+	 * @return longueur de la version en octets
+	 */
+	public int getVersionLength()
+	{
+		return this.versionEnd - this.versionStart;
+	}
+
+	/**
+	 * Retourne le nombre de champs de l'entte.
+	 *
+	 * @return nombre de champs
+	 */
+	public int getFieldCount()
+	{
+		return this.fieldCount;
+	}
+
+	/**
+	 * Retourne la position du nom du champ spcifi dans le tampon.
+	 *
+	 * @param i numro du champ,  partir de 0
+	 * @return position du premier octet du nom
+	 */
+	public int getNameOffset(int i)
+	{
+		return this.base + this.nameStarts[i];
+	}
+
+	/**
+	 * Retourne la longueur du nom du champ spcifi.
+	 *
+	 * @param i numro du champ,  partir de 0
+	 * @return longueur du nom en octets
+	 */
+	public int getNameLength(int i)
+	{
+		return this.nameEnds[i] - this.nameStarts[i];
+	}
+
+	/**
+	 * Retourne la position de la valeur du champ spcifi dans le tampon, sans les blancs qui l'entourent.
+	 *
+	 * @param i numro du champ,  partir de 0
+	 * @return position du premier octet de la valeur
+	 */
+	public int getValueOffset(int i)
+	{
+		return this.base + this.valueStarts[i];
+	}
+
+	/**
+	 * Retourne la longueur de la valeur du champ spcifi, sans les blancs qui l'entourent.
+	 *
+	 * @param i numro du champ,  partir de 0
+	 * @return longueur de la valeur en octets (0 si la valeur est vide)
+	 */
+	public int getValueLength(int i)
+	{
+		return this.valueEnds[i] - this.valueStarts[i];
+	}
+}
@@ -1,13 +1,20 @@
 package http.common;
 
 import java.io.ByteArrayInputStream;
+import java.io.Closeable;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.charset.Charset;
+import java.util.concurrent.ThreadLocalRandom;
 
 /**
  * La classe HttpResponse modlise une rponse HTTP. 
@@ -24,6 +31,12 @@ public class HttpResponse
 	// Contenu associ  la rponse
 	private byte[] content;
 	
+	// Contenu associ  la rponse hors du tas (p. ex. fichier projet en mmoire),  la place du fichier
+	private ByteBuffer contentBuffer;
+	
+	// Propritaire du contenu hors du tas,  fermer quand la rponse n'en a plus besoin
+	private Closeable contentOwner;
+	
 	// Chemin du fichier  envoyer ou recevoir
 	private String fileName;
 	
@@ -33,17 +46,95 @@ public class HttpResponse
 	// Indique si le contenu doit tre envoy
 	private boolean isContentSendable;
 	
+	// Nombre max. d'octets d'un fichier envoys sans copie en un seul appel, pour vrifier rgulirement 
+	// si le transfert doit s'arrter
+	private static final long TRANSFER_CHUNK_SIZE = 1024 * 1024;
+	
+	// Taille max. du dbut d'un fichier envoy avec l'entte dans une mme criture; 
+	// un fichier plus petit est envoy au complet avec l'entte
+	private static final int FIRST_CHUNK_SIZE = 16384;
+	
+	// Jeu de caractres de l'entte
+	private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+	
+	// Taille initiale du tampon de l'entte encod, double au besoin
+	private static final int HEADER_BUFFER_SIZE = 512;
+	
+	// Tampon de l'entte en cours d'envoi non bloquant
+	private ByteBuffer headerBuffer;
+	
+	// Entte encod, rutilis d'une rponse  l'autre
+	private ByteBuffer encodedHeader = ByteBuffer.allocate(HEADER_BUFFER_SIZE);
+	
+	// Indique si l'entte a t encod pour la rponse courante
+	private boolean isHeaderEncoded;
+	
+	// Tampon du contenu en mmoire, ou du dbut du fichier, en cours d'envoi non bloquant
+	private ByteBuffer bodyBuffer;
+	
+	// Tampon du dbut du fichier, conserv d'une rponse  l'autre
+	private ByteBuffer firstChunkBuffer;
+	
+	// Tampons de l'entte, de l'entte de partie et du contenu pour l'criture groupe
+	private final ByteBuffer[] writeBuffers = new ByteBuffer[3];
+	
+	// Tampon vide, qui remplace un tampon absent dans l'criture groupe
+	private static final ByteBuffer EMPTY_BUFFER = ByteBuffer.allocate(0);
+	
+	// Plages d'octets  envoyer (dbut et fin inclusive), ou null pour envoyer tout le contenu
+	private long[][] ranges;
+	
+	// Taille totale du contenu dont les plages sont extraites
+	private long totalLength;
+	
+	// Dlimiteur des parties d'une rponse multipart/byteranges, ou null si la rponse n'a qu'une partie
+	private String boundary;
+	
+	// Type MIME du contenu, rpt dans l'entte de chaque partie
+	private String partContentType;
+	
+	// Numro de la partie en cours d'envoi non bloquant
+	private int partIndex;
+	
+	// Tampon de l'entte de la partie (ou de la dlimitation finale) en cours d'envoi non bloquant
+	private ByteBuffer partBuffer;
+	
+	// Canal du fichier en cours d'envoi non bloquant
+	private FileChannel bodyChannel;
+	
+	// Position du prochain octet du fichier  envoyer
+	private long bodyPosition;
+	
+	// Nombre d'octets du fichier  envoyer
+	private long bodyLength;
+	
 	/**
 	 * Construit une rponse HTTP.
 	 */
 	public HttpResponse()
 	{
 		this.header = new HttpResponseHeader();
+		this.reset();
+	}
+	
+	/**
+	 * Remet la rponse dans son tat initial pour qu'elle puisse servir  nouveau 
+	 * (p. ex. pour la requte suivante sur une connexion persistante).
+	 */
+	public void reset()
+	{
+		this.close();
+		this.headerBuffer = null;
+		this.isHeaderEncoded = false;
+		this.header.reset();
 		this.content = null;
+		this.ranges = null;
+		this.boundary = null;
+		this.partContentType = null;
 		this.fileName = "";
 		this.header.setProtocol("HTTP/1.1");
 		this.header.setStatusCode(0);
-		this.header.setField("Server", "Okey Dokey Server 0.2");
+		this.header.setField("Server", HttpResponseHeader.SERVER_NAME);
 		this.header.setField("Connection", "close");
 		this.isCacheable = true;
 		this.isContentSendable = true;
@@ -59,27 +150,346 @@ public class HttpResponse
 	 */
 	public boolean send(OutputStream os, TransferController tc) throws IOException, BadHeaderException
 	{
+		return this.send(os, null, tc);
+	}
+	
+	/**
+	 * Envoie la rponse HTTP sur la stream de sortie passe en paramtre. Si le canal de la connexion est fourni 
+	 * et que le dbit n'est pas limit par le contrleur, la rponse est plutt crite directement sur le canal 
+	 * avec {@link #write(WritableByteChannel, TransferController)} : l'entte part avec le dbut du contenu 
+	 * et un fichier est envoy sans copie. 
+	 * 
+	 * @param os OutputStream pour l'criture de la rponse 
+	 * @param ch canal en mode bloquant de la connexion sous-jacente  la stream, ou null s'il n'y en a pas
+	 * @param tc Contrleur du transfert
+	 * @return vrai si le tlversement a t complt, faux sinon 
+	 * @throws IOException
+	 */
+	public boolean send(OutputStream os, WritableByteChannel ch, TransferController tc) throws IOException, BadHeaderException
+	{
+		// Envoi direct sur le canal,  plein dbit
+		if (ch != null && tc.getMaxRate() == 0)
+		{
+			// En mode bloquant, l'criture ne s'interrompt que si le transfert est arrt ou le fichier raccourci 
+			while (!this.write(ch, tc));
+			
+			return !tc.stopped && this.bodyPosition == this.bodyLength;
+		}
+		
 		boolean success = true;
 		
 		// Envoie le header
-		this.header.send(os);
+		if (!this.isHeaderEncoded)
+		{
+			this.encodeHeader();
+		}
 		
-		// Envoie le contenu s'il y en a un et s'il doit tre envoy 
-		if (this.isContentSendable 
-				&& this.header.getField("Content-Length") != null 
-				&& !this.header.getField("Content-Length").equals("0"))
+		os.write(this.encodedHeader.array(), 0, this.encodedHeader.limit());
+		
+		// Envoie le contenu s'il y en a un et s'il doit tre envoy, plage par plage s'il y a lieu 
+		if (this.hasBody())
 		{
-			InputStream is = (this.content == null) ? new FileInputStream(new File(this.fileName)) : new ByteArrayInputStream(this.content);
+			int count = (this.ranges == null) ? 1 : this.ranges.length;
+			
+			for (int i = 0; i < count && success; i++)
+			{
+				long start = (this.ranges == null) ? 0 : this.ranges[i][0];
+				long limit = (this.ranges == null) ? Long.MAX_VALUE : this.ranges[i][1] - start + 1;
+				
+				if (this.boundary != null)
+				{
+					os.write(encodeText(this.makePartHeader(i)).array());
+				}
+				
+				InputStream is;
+				
+				if (this.content == null)
+				{
+					is = new FileInputStream(new File(this.fileName));
+					is.skip(start);
+				}
+				else
+				{
+					is = new ByteArrayInputStream(this.content, (int) start, (int) Math.min(limit, this.content.length - start));
+				}
+				
+				success = this.doCopy(is, os, tc, limit);
+				
+				is.close();
+			}
+			
+			if (this.boundary != null && success)
+			{
+				os.write(encodeText(this.makeClosingBoundary()).array());
+			}
 			
-			success = this.doCopy(is, os, tc);
-
-			is.close();
 			os.flush();
 		}
 		
+		this.close();
+		
 		return success;
 	}
 	
+	/**
+	 * crit la rponse HTTP sur le canal pass en paramtre sans bloquer. Si le canal ne peut pas tout accepter, 
+	 * la mthode doit tre appele de nouveau quand il est prt pour l'criture; elle reprend l o elle s'tait arrte. 
+	 * Le dbit max. du contrleur n'est pas appliqu dans ce mode.
+	 * <p>
+	 * L'entte et le dbut du contenu (tout le contenu s'il est petit) partent ensemble en une seule criture 
+	 * groupe; le reste d'un fichier est ensuite envoy sans copie (voir {@link FileChannel#transferTo}).
+	 * 
+	 * @param ch canal non bloquant pour l'criture de la rponse
+	 * @param tc Contrleur du transfert
+	 * @return vrai si l'envoi est termin (complt ou arrt par le contrleur), faux s'il reste des donnes  crire
+	 * @throws IOException
+	 */
+	public boolean write(WritableByteChannel ch, TransferController tc) throws IOException, BadHeaderException
+	{
+		// Premier appel : prpare les tampons de l'entte et du dbut du contenu
+		if (this.headerBuffer == null)
+		{
+			if (!this.isHeaderEncoded)
+			{
+				this.encodeHeader();
+			}
+			
+			this.headerBuffer = this.encodedHeader;
+
+			this.partBuffer = null;
+			this.bodyPosition = 0;
+			this.bodyLength = 0;
+			this.partIndex = -1;
+			
+			if (this.hasBody())
+			{
+				this.nextPart();
+			}
+		}
+		
+		while (true)
+		{
+			// Envoie ce qui reste de l'entte, de l'entte de partie et du dbut du contenu
+			if (this.hasBufferedData(tc))
+			{
+				if (ch instanceof GatheringByteChannel)
+				{
+					this.writeBuffers[0] = this.headerBuffer;
+					this.writeBuffers[1] = (this.partBuffer != null) ? this.partBuffer : EMPTY_BUFFER;
+					this.writeBuffers[2] = (this.bodyBuffer != null) ? this.bodyBuffer : EMPTY_BUFFER;
+					((GatheringByteChannel) ch).write(this.writeBuffers);
+				}
+				else if (this.headerBuffer.hasRemaining())
+				{
+					ch.write(this.headerBuffer);
+				}
+				else
+				{
+					ch.write((this.partBuffer != null && this.partBuffer.hasRemaining()) ? this.partBuffer : this.bodyBuffer);
+				}
+				
+				if (this.hasBufferedData(tc))
+				{
+					return false;
+				}
+			}
+			
+			// Envoie le reste du fichier sans copie tant que le canal l'accepte et que le transfert doit se poursuivre
+			while (this.bodyChannel != null && this.bodyPosition < this.bodyLength && !tc.stopped)
+			{
+				long len = this.bodyChannel.transferTo(this.bodyPosition, Math.min(TRANSFER_CHUNK_SIZE, this.bodyLength - this.bodyPosition), ch);
+				
+				if (len <= 0)
+				{
+					// Canal plein : reprendra quand il sera prt,  moins que le fichier ait t raccourci
+					if (this.bodyPosition < this.bodyChannel.size())
+					{
+						return false;
+					}
+					
+					this.close();
+					
+					return true;
+				}
+				
+				this.bodyPosition += len;
+			}
+			
+			// Passe  la plage suivante, puis  la dlimitation finale d'une rponse en plusieurs parties; 
+			// une rponse sans contenu (HEAD, Content-Length nul) n'a aucune partie
+			if (tc.stopped || !this.hasBody() || this.partIndex < 0 || !this.nextPart())
+			{
+				break;
+			}
+		}
+		
+		this.close();
+		
+		return true;
+	}
+	
+	// Indique s'il reste des donnes en mmoire  crire
+	private boolean hasBufferedData(TransferController tc)
+	{
+		return this.headerBuffer.hasRemaining() 
+				|| (!tc.stopped && ((this.partBuffer != null && this.partBuffer.hasRemaining()) 
+						|| (this.bodyBuffer != null && this.bodyBuffer.hasRemaining())));
+	}
+	
+	// Prpare la partie suivante du contenu : le contenu complet ou la plage suivante (prcde de son entte 
+	// dans une rponse en plusieurs parties), puis la dlimitation finale. Retourne faux s'il ne reste rien  envoyer.
+	private boolean nextPart() throws IOException
+	{
+		int count = (this.ranges == null) ? 1 : this.ranges.length;
+		
+		this.partIndex++;
+		this.partBuffer = null;
+		this.bodyBuffer = null;
+		
+		if (this.partIndex < count)
+		{
+			if (this.boundary != null)
+			{
+				this.partBuffer = encodeText(this.makePartHeader(this.partIndex));
+			}
+			
+			long start = (this.ranges == null) ? 0 : this.ranges[this.partIndex][0];
+			long end = (this.ranges == null) ? -1 : this.ranges[this.partIndex][1] + 1;
+			
+			if (this.content == null && this.contentBuffer != null)
+			{
+				this.bodyBuffer = this.contentBuffer.duplicate();
+				
+				if (end >= 0)
+				{
+					int base = this.bodyBuffer.position();
+					this.bodyBuffer.limit(base + (int) Math.min(end, this.bodyBuffer.remaining()));
+					this.bodyBuffer.position(base + (int) start);
+				}
+			}
+			else if (this.content == null)
+			{
+				this.openBody(start, end);
+				this.readFirstChunk();
+			}
+			else
+			{
+				end = (end < 0) ? this.content.length : Math.min(end, this.content.length);
+				this.bodyBuffer = ByteBuffer.wrap(this.content, (int) start, (int) (end - start));
+			}
+			
+			return true;
+		}
+		
+		if (this.boundary != null && this.partIndex == count)
+		{
+			this.partBuffer = encodeText(this.makeClosingBoundary());
+			return true;
+		}
+		
+		return false;
+	}
+	
+	// Indique si la rponse a un contenu  envoyer
+	private boolean hasBody()
+	{
+		return this.isContentSendable 
+				&& this.header.getField("Content-Length") != null 
+				&& !this.header.getField("Content-Length").equals("0");
+	}
+	
+	// Encode un texte (p. ex. l'entte d'une partie) directement dans un tampon, un octet ISO-8859-1 par caractre
+	private static ByteBuffer encodeText(String text)
+	{
+		ByteBuffer buf = ByteBuffer.allocate(text.length());
+		
+		for (int i = 0; i < text.length(); i++)
+		{
+			char c = text.charAt(i);
+			buf.put(c <= 0xFF ? (byte) c : (byte) '?');
+		}
+		
+		buf.flip();
+		
+		return buf;
+	}
+	
+	// Ouvre au besoin le fichier  envoyer et se place au dbut de la plage spcifie (fin exclusive); sans plage (fin 
+	// ngative), la longueur envoye est celle annonce par Content-Length. La fin du fichier n'est jamais dpasse.
+	private void openBody(long start, long end) throws IOException
+	{
+		if (this.bodyChannel == null)
+		{
+			this.bodyChannel = new FileInputStream(new File(this.fileName)).getChannel();
+		}
+		
+		this.bodyPosition = start;
+		this.bodyLength = this.bodyChannel.size();
+		
+		if (end >= 0)
+		{
+			this.bodyLength = Math.min(end, this.bodyLength);
+		}
+		else
+		{
+			try
+			{
+				this.bodyLength = Math.min(Long.parseLong(this.header.getField("Content-Length")), this.bodyLength);
+			}
+			catch (NumberFormatException e)
+			{
+			}
+		}
+	}
+	
+	// Lit le dbut du fichier, ou tout le fichier s'il est petit, pour l'envoyer avec l'entte
+	private void readFirstChunk() throws IOException
+	{
+		if (this.firstChunkBuffer == null)
+		{
+			this.firstChunkBuffer = ByteBuffer.allocate(FIRST_CHUNK_SIZE);
+		}
+		
+		this.firstChunkBuffer.clear();
+		this.firstChunkBuffer.limit((int) Math.max(0, Math.min(FIRST_CHUNK_SIZE, this.bodyLength - this.bodyPosition)));
+		
+		int len;
+		
+		while (this.firstChunkBuffer.hasRemaining() && (len = this.bodyChannel.read(this.firstChunkBuffer, this.bodyPosition)) > 0)
+		{
+			this.bodyPosition += len;
+		}
+		
+		this.firstChunkBuffer.flip();
+		this.bodyBuffer = this.firstChunkBuffer;
+	}
+	
+	/**
+	 * Libre les ressources associes  l'envoi de la rponse.
+	 */
+	public void close()
+	{
+		if (this.bodyChannel != null)
+		{
+			try { this.bodyChannel.close(); } catch (IOException unused) {}
+			this.bodyChannel = null;
+		}
+		
+		this.bodyBuffer = null;
+		this.partBuffer = null;
+		this.writeBuffers[0] = null;
+		this.writeBuffers[1] = null;
+		this.writeBuffers[2] = null;
+		
+		if (this.contentOwner != null)
+		{
+			try { this.contentOwner.close(); } catch (IOException unused) {}
+			this.contentOwner = null;
+		}
+		
+		this.contentBuffer = null;
+	}
+	
 	/**
 	 * Reoit la partie contenu d'une rponse HTTP.
 	 * 
@@ -102,7 +512,7 @@ public class HttpResponse
 				
 				OutputStream os = new FileOutputStream(outputFile);
 				
-				this.doCopy(is, os, tc);
+				this.doCopy(is, os, tc, Long.MAX_VALUE);
 				
 				os.close();
 				
@@ -120,18 +530,20 @@ public class HttpResponse
 		return false;
 	}
 	
-	// Effectue la copie d'une stream d'entre vers une stream de sortie.
-	// Le contrleur permet d'arrter le transfert  tout moment ou de changer son dbit max. 
-	private boolean doCopy(InputStream is, OutputStream os, TransferController tc) throws IOException
+	// Effectue la copie d'une stream d'entre vers une stream de sortie, jusqu' la fin de l'entre ou au nombre max. 
+	// d'octets spcifi. Le contrleur permet d'arrter le transfert  tout moment ou de changer son dbit max. 
+	private boolean doCopy(InputStream is, OutputStream os, TransferController tc, long limit) throws IOException
 	{
 		// Transfre 1 Ko  la fois
 		byte[] buf = new byte[1024];
-		int len;
+		int len = 0;
+		long remaining = limit;
 		
 		// Continue  copier tant qu'il y a quelque chose  lire et que le transfert doit se poursuivre
-		for (long startTime = System.currentTimeMillis(); (len = is.read(buf)) > 0 && !tc.stopped; startTime = System.currentTimeMillis())
+		for (long startTime = System.currentTimeMillis(); remaining > 0 && (len = is.read(buf, 0, (int) Math.min(buf.length, remaining))) > 0 && !tc.stopped; startTime = System.currentTimeMillis())
 		{
 			os.write(buf, 0, len);
+			remaining -= len;
 			
 			if (tc.getMaxRate() > 0)
 			{
@@ -148,7 +560,129 @@ public class HttpResponse
 			}
 		}
 		
-		return len == -1;
+		return len == -1 || remaining == 0;
+	}
+	
+	/**
+	 * Encode l'entte modlis de la rponse dans le tampon d'entte, rutilis d'une rponse  l'autre 
+	 * (voir {@link HttpResponseHeader#encode(ByteBuffer)}). L'entte envoy sera celui-ci, mme si des champs 
+	 * sont modifis par la suite.
+	 * 
+	 * @throws BadHeaderException si l'entte ne peut pas tre fabriqu
+	 */
+	public void encodeHeader() throws BadHeaderException
+	{
+		while (true)
+		{
+			this.encodedHeader.clear();
+			
+			try
+			{
+				this.header.encode(this.encodedHeader);
+				break;
+			}
+			catch (BufferOverflowException e)
+			{
+				this.encodedHeader = ByteBuffer.allocate(this.encodedHeader.capacity() * 2);
+			}
+		}
+		
+		this.encodedHeader.flip();
+		this.isHeaderEncoded = true;
+	}
+	
+	/**
+	 * Retourne le tampon d'entte vid, pour y crire directement l'entte d'une rponse produite sans passer 
+	 * par les champs de l'entte modlis (p. ex. une rponse 304). L'criture doit se terminer par 
+	 * {@link #endEncodedHeader()}; si le tampon dborde, il faut recommencer avec une capacit plus grande.
+	 * 
+	 * @param minCapacity capacit min. du tampon en octets
+	 * @return tampon d'entte, prt pour l'criture
+	 */
+	public ByteBuffer startEncodedHeader(int minCapacity)
+	{
+		if (this.encodedHeader.capacity() < minCapacity)
+		{
+			this.encodedHeader = ByteBuffer.allocate(minCapacity);
+		}
+		
+		this.encodedHeader.clear();
+		
+		return this.encodedHeader;
+	}
+	
+	/**
+	 * Termine l'criture directe de l'entte commence avec {@link #startEncodedHeader(int)}; c'est cet entte 
+	 * qui sera envoy.
+	 */
+	public void endEncodedHeader()
+	{
+		this.encodedHeader.flip();
+		this.isHeaderEncoded = true;
+	}
+	
+	/**
+	 * Retourne le texte de l'entte encod, p. ex. pour le journal.
+	 * 
+	 * @return texte de l'entte, ou null s'il n'a pas encore t encod
+	 */
+	public String getHeaderText()
+	{
+		if (!this.isHeaderEncoded)
+		{
+			return null;
+		}
+		
+		return new String(this.encodedHeader.array(), 0, this.encodedHeader.limit(), ISO_8859_1);
+	}
+	
+	/**
+	 * Limite l'envoi du contenu aux plages d'octets spcifies (rponse 206). Une seule plage est envoye telle quelle 
+	 * avec un champ Content-Range; plusieurs plages sont envoyes en multipart/byteranges, chacune prcde de son 
+	 * type et de sa position. Content-Length est ajust en consquence; Content-Type doit dj tre programm.
+	 * 
+	 * @param ranges plages  envoyer, chacune forme de la position de son premier et de son dernier octet
+	 * @param totalLength taille totale du contenu
+	 */
+	public void setRanges(long[][] ranges, long totalLength)
+	{
+		this.ranges = ranges;
+		this.totalLength = totalLength;
+		
+		if (ranges.length == 1)
+		{
+			this.header.setField("Content-Range", "bytes " + ranges[0][0] + "-" + ranges[0][1] + "/" + totalLength);
+			this.header.setField("Content-Length", (ranges[0][1] - ranges[0][0] + 1) + "");
+		}
+		else
+		{
+			this.partContentType = this.header.getField("Content-Type");
+			this.boundary = Long.toHexString(ThreadLocalRandom.current().nextLong() | Long.MIN_VALUE);
+			this.header.setField("Content-Type", "multipart/byteranges; boundary=" + this.boundary);
+			
+			long length = this.makeClosingBoundary().length();
+			
+			for (int i = 0; i < ranges.length; i++)
+			{
+				length += this.makePartHeader(i).length() + ranges[i][1] - ranges[i][0] + 1;
+			}
+			
+			this.header.setField("Content-Length", length + "");
+		}
+	}
+	
+	// Construit l'entte de la partie spcifie d'une rponse multipart/byteranges
+	private String makePartHeader(int i)
+	{
+		return "\r\n--" + this.boundary + "\r\n"
+				+ (this.partContentType != null ? "Content-Type: " + this.partContentType + "\r\n" : "")
+				+ "Content-Range: bytes " + this.ranges[i][0] + "-" + this.ranges[i][1] + "/" + this.totalLength + "\r\n\r\n";
+	}
+	
+	// Construit la dlimitation finale d'une rponse multipart/byteranges
+	private String makeClosingBoundary()
+	{
+		return "\r\n--" + this.boundary + "--\r\n";
 	}
 	
 	/**
@@ -185,6 +719,22 @@ public class HttpResponse
 		}
 	}
 
+	/**
+	 * Programme un contenu hors du tas (p. ex. un fichier projet en mmoire)  envoyer  la place du fichier 
+	 * de la rponse. Le propritaire du contenu est ferm ds que la rponse n'en a plus besoin. Si le dbit 
+	 * est limit, le contenu est plutt relu du fichier.
+	 * 
+	 * @param content contenu  associer  la rponse, de sa position  sa limite
+	 * @param owner propritaire du contenu  fermer  la fin de l'envoi, ou null
+	 */
+	public void setContent(ByteBuffer content, Closeable owner)
+	{
+		this.close();
+		this.contentBuffer = content;
+		this.contentOwner = owner;
+		this.header.setField("Content-Length", content.remaining() + "");
+	}
+
 	/**
 	 * Programme le contenu associ  la rponse.
 	 * 
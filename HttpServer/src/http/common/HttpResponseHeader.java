@@ -2,8 +2,10 @@ package http.common;
 
 import static util.StringUtil.split;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
-import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -18,6 +20,47 @@ import util.DateUtil;
  */
 public class HttpResponseHeader extends HttpHeader
 {
+	/**
+	 * Valeur du champ Server des rponses
+	 */
+	public static final String SERVER_NAME = "Okey Dokey Server 0.2";
+	
+	// Fin de ligne
+	private static final byte[] CRLF = {'\r', '\n'};
+	
+	// Lignes de statut HTTP/1.1 encodes d'avance, indexes par code
+	private static final byte[][] STATUS_LINES = new byte[600][];
+	
+	// Noms des champs courants des rponses encods d'avance, suivis du deux-points et de l'espace
+	private static final Map<String, byte[]> FIELD_NAMES = new HashMap<String, byte[]>();
+	
+	// Valeurs fixes de champs encodes d'avance
+	private static final Map<String, byte[]> FIELD_VALUES = new HashMap<String, byte[]>();
+	
+	static
+	{
+		for (Map.Entry<Integer, String> entry : statusCodeDescMap.entrySet())
+		{
+			STATUS_LINES[entry.getKey()] = toBytes("HTTP/1.1 " + entry.getKey() + " " + entry.getValue() + "\r\n");
+		}
+		
+		String[] names = {"Date", "Server", "Connection", "Keep-Alive", "Content-Type", "Content-Length", "Content-Encoding", 
+				"Content-Range", "Last-Modified", "ETag", "Cache-Control", "Expires", "Vary", "Accept-Ranges", "Retry-After"};
+		
+		for (String name : names)
+		{
+			FIELD_NAMES.put(name, toBytes(name + ": "));
+		}
+		
+		String[] values = {SERVER_NAME, "keep-alive", "close", "public", "bytes", "Accept-Encoding", "gzip", "deflate", 
+				"text/html", "0", "max-age=0, must-revalidate"};
+		
+		for (String value : values)
+		{
+			FIELD_VALUES.put(value, toBytes(value));
+		}
+	}
+	
 	// Code de la rponse (p. ex. 404)
 	private int statusCode;
 	
@@ -38,10 +81,74 @@ public class HttpResponseHeader extends HttpHeader
 		this.isCacheable = true;
 	}
 	
+	/* (non-Javadoc)
+	 * @see http.common.HttpHeader#reset()
+	 */
+	@Override
+	public void reset()
+	{
+		super.reset();
+		this.statusCode = 0;
+		this.statusCodeDesc = "";
+		this.isCacheable = true;
+	}
+	
 	/* (non-Javadoc)
 	 * @see http.common.HttpHeader#make()
 	 */
 	public void make() throws BadHeaderException
+	{
+		this.prepare();
+
+		StringBuilder sb = new StringBuilder(256);
+		sb.append(this.protocol).append(' ').append(this.statusCode).append(' ').append(statusCodeDescMap.get(this.statusCode)).append("\r\n");
+
+		for (Map.Entry<String, String> field : this.fields.entrySet())
+		{
+			sb.append(field.getKey()).append(": ").append(field.getValue()).append("\r\n");
+		}
+		sb.append("\r\n");
+		
+		this.text = sb.toString();
+	}
+	
+	/**
+	 * crit l'entte directement dans le tampon spcifi, un octet ISO-8859-1 par caractre, sans passer 
+	 * par sa reprsentation textuelle. La ligne de statut, les noms des champs courants et les valeurs fixes 
+	 * sont copis d'octets encods d'avance.
+	 * 
+	 * @param buf tampon o crire l'entte,  partir de sa position
+	 * @throws BadHeaderException si le code de statut ou le protocole est invalide
+	 * @throws java.nio.BufferOverflowException si le tampon est trop petit; il faut recommencer avec un plus grand
+	 */
+	public void encode(ByteBuffer buf) throws BadHeaderException
+	{
+		this.prepare();
+		
+		if (this.protocol.equals("HTTP/1.1"))
+		{
+			putStatusLine(buf, this.statusCode);
+		}
+		else
+		{
+			putText(buf, this.protocol);
+			buf.put((byte) ' ');
+			putNumber(buf, this.statusCode);
+			buf.put((byte) ' ');
+			putText(buf, statusCodeDescMap.get(this.statusCode));
+			buf.put(CRLF);
+		}
+		
+		for (Map.Entry<String, String> field : this.fields.entrySet())
+		{
+			putField(buf, field.getKey(), field.getValue());
+		}
+		
+		buf.put(CRLF);
+	}
+	
+	// Valide l'entte et ajoute les champs qui dpendent du moment de l'envoi
+	private void prepare() throws BadHeaderException
 	{
 		// Cas d'erreur
 		if (!statusCodeDescMap.containsKey(this.statusCode))
@@ -53,21 +160,155 @@ public class HttpResponseHeader extends HttpHeader
 			throw new BadHeaderException("Mauvais protocole.");
 		}
 
-		this.fields.put("Date", DateUtil.formatDate(new Date()));
+		this.fields.put("Date", DateUtil.getCurrentDate());
 
 		if (!this.isCacheable) 
 		{
 			this.fields.put("Expires", this.fields.get("Date"));
 			this.fields.put("Cache-Control", "max-age=0, must-revalidate");
 		}
-
-		this.text = String.format("%s %d %s\r\n", this.protocol, this.statusCode, statusCodeDescMap.get(this.statusCode));
-
-		for (String field : this.fields.keySet())
+	}
+	
+	/**
+	 * crit la ligne de statut HTTP/1.1 encode d'avance du code spcifi.
+	 * 
+	 * @param buf tampon o crire la ligne
+	 * @param statusCode code de statut existant
+	 */
+	public static void putStatusLine(ByteBuffer buf, int statusCode)
+	{
+		buf.put(STATUS_LINES[statusCode]);
+	}
+	
+	/**
+	 * crit un champ d'entte complet (nom, valeur et fin de ligne).
+	 * 
+	 * @param buf tampon o crire le champ
+	 * @param field nom du champ
+	 * @param value valeur du champ
+	 */
+	public static void putField(ByteBuffer buf, String field, String value)
+	{
+		putFieldName(buf, field);
+		
+		byte[] bytes = FIELD_VALUES.get(value);
+		
+		if (bytes == null)
+		{
+			// La date courante est encode une fois par seconde
+			bytes = DateUtil.getEncodedDate(value);
+		}
+		
+		if (bytes != null)
+		{
+			buf.put(bytes);
+		}
+		else
+		{
+			putText(buf, value);
+		}
+		
+		buf.put(CRLF);
+	}
+	
+	/**
+	 * crit un champ d'entte complet dont la valeur est un nombre.
+	 * 
+	 * @param buf tampon o crire le champ
+	 * @param field nom du champ
+	 * @param value valeur du champ
+	 */
+	public static void putField(ByteBuffer buf, String field, long value)
+	{
+		putFieldName(buf, field);
+		putNumber(buf, value);
+		buf.put(CRLF);
+	}
+	
+	/**
+	 * crit le nom d'un champ suivi du deux-points et de l'espace qui prcdent sa valeur.
+	 * 
+	 * @param buf tampon o crire le nom
+	 * @param field nom du champ
+	 */
+	public static void putFieldName(ByteBuffer buf, String field)
+	{
+		byte[] bytes = FIELD_NAMES.get(field);
+		
+		if (bytes != null)
+		{
+			buf.put(bytes);
+		}
+		else
+		{
+			putText(buf, field);
+			buf.put((byte) ':').put((byte) ' ');
+		}
+	}
+	
+	/**
+	 * crit du texte, un octet ISO-8859-1 par caractre ( ?  pour les caractres hors de ce jeu).
+	 * 
+	 * @param buf tampon o crire le texte
+	 * @param text texte  crire
+	 */
+	public static void putText(ByteBuffer buf, CharSequence text)
+	{
+		for (int i = 0; i < text.length(); i++)
+		{
+			char c = text.charAt(i);
+			buf.put(c <= 0xFF ? (byte) c : (byte) '?');
+		}
+	}
+	
+	/**
+	 * crit un nombre entier en dcimal, sans crer de chane.
+	 * 
+	 * @param buf tampon o crire le nombre
+	 * @param value nombre  crire
+	 */
+	public static void putNumber(ByteBuffer buf, long value)
+	{
+		if (value < 0)
+		{
+			buf.put((byte) '-');
+			value = -value;
+		}
+		
+		long divisor = 1;
+		
+		while (value / divisor >= 10)
+		{
+			divisor *= 10;
+		}
+		
+		for (; divisor > 0; divisor /= 10)
+		{
+			buf.put((byte) ('0' + (value / divisor) % 10));
+		}
+	}
+	
+	/**
+	 * crit la fin de ligne (CRLF), p. ex. pour terminer l'entte par une ligne vide.
+	 * 
+	 * @param buf tampon o crire la fin de ligne
+	 */
+	public static void putLineEnd(ByteBuffer buf)
+	{
+		buf.put(CRLF);
+	}
+	
+	// Encode un texte ASCII
+	private static byte[] toBytes(String text)
+	{
+		byte[] bytes = new byte[text.length()];
+		
+		for (int i = 0; i < bytes.length; i++)
 		{
-			this.text += String.format("%s: %s\r\n", field, this.fields.get(field));
+			bytes[i] = (byte) text.charAt(i);
 		}
-		this.text += "\r\n";
+		
+		return bytes;
 	}
 
 	/* (non-Javadoc)
@@ -5,26 +5,45 @@ import static util.StringUtil.stringToMap;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.lang.reflect.Method;
 import java.net.InetAddress;
-import java.net.ServerSocket;
+import java.net.InetSocketAddress;
 import java.net.Socket;
-import java.net.SocketTimeoutException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
 import java.nio.charset.Charset;
-import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.Iterator;
-import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import http.common.HttpRequest;
 import http.common.HttpResponse;
+import http.server.cache.ContentCache;
+import http.server.cache.ContentEncoder;
+import http.server.cache.FileMetadataCache;
+import http.server.cache.MappedFileCache;
+import http.server.cache.SharedContentCache;
+import http.server.cache.SiteCache;
+import http.server.cache.SiteWatcher;
 import http.server.event.RequestEvent;
 import http.server.event.RequestEventProcessor;
 
 /**
  * La classe Dispatcher agit comme un rpartiteur qui accepte les connexions entrantes  
- * et cre pour chacune un thread o s'excute d'une instance de serveur HTTP. 
+ * et confie chacune  un pool de threads de travail o s'excute une instance de serveur HTTP. 
+ * En mode non bloquant, les connexions sont plutt rparties entre plusieurs boucles d'vnements (voir {@link EventLoop}).
  * 
  * @author Christian Lesage
  * @author Alexandre Tremblay
@@ -34,12 +53,6 @@ public class Dispatcher implements RequestEventProcessor, Runnable
 	// Nom du fichier contenant la liste des extensions et des types MIME correspondants
 	private final static String MIME_TYPES_FILE = "mime_types.txt";
 	
-	// Nombre max. de de connexions simultanes
-	private final static int MAX_CONNECTIONS = 4;
-	
-	// Nombre max. de connexions en attente dans la file 
-	private final static int BACKLOG = 10;
-
 	// Chemin absolu du dossier o se trouvent les fichiers ncessaires au serveur
 	private final String serverPath;
 	
@@ -52,18 +65,30 @@ public class Dispatcher implements RequestEventProcessor, Runnable
 	// Port utilis pour les connexions entrantes
 	private final int portNum;
 	
+	// Configuration du serveur
+	private final ServerConfig config;
+	
 	// Dictionnaire des extensions et des types MIME correspondants
 	private static Map<String, String> mimeTypes = null;
 	
-	// Liste des serveurs actifs
-	private List<HttpServerThread> serverThreads = new ArrayList<HttpServerThread>();
+	// Ensemble des serveurs actifs ou en attente d'un thread de travail
+	private final Set<HttpServerThread> serverThreads = Collections.newSetFromMap(new ConcurrentHashMap<HttpServerThread, Boolean>());
 	
 	// Compteur de transactions
-	private int transactionId = 1; 
+	private final AtomicInteger transactionId = new AtomicInteger(1); 
+	
+	// Compteur servant  rpartir  tour de rle les connexions entre les boucles d'vnements
+	private final AtomicInteger nextLoop = new AtomicInteger(0);
 	
 	// Indique si le thread du rpartiteur doit s'arrter
 	private volatile Thread runThread;
 	
+	// Boucles d'vnements en mode non bloquant
+	private volatile EventLoop[] eventLoops;
+	
+	// Caches des fichiers du site, partags par tous les serveurs
+	private final SiteCache siteCache;
+	
 	/**
 	 * Construit un rpartiteur de requtes.
 	 * 
@@ -74,12 +99,138 @@ public class Dispatcher implements RequestEventProcessor, Runnable
 	 */
 	public Dispatcher(String serverPath, String siteFolder, String ipAddress, int portNum)
 	{
-		this.serverPath = serverPath;
-		this.siteFolder = siteFolder;
-		this.ipAddress = ipAddress;
-		this.portNum = portNum;
+		this(createConfig(serverPath, siteFolder, ipAddress, portNum));
+	}
+	
+	/**
+	 * Construit un rpartiteur de requtes.
+	 * 
+	 * @param config configuration du serveur
+	 */
+	public Dispatcher(ServerConfig config)
+	{
+		this.config = config;
+		this.serverPath = config.getServerPath();
+		this.siteFolder = config.getSiteFolder();
+		this.ipAddress = config.getIpAddress();
+		this.portNum = config.getPortNum();
 		
 		// Lecture du fichier des types MIME  la premire instanciation de la classe
+		Dispatcher.loadMimeTypes(this.serverPath);
+		
+		FileMetadataCache metadataCache = new FileMetadataCache(Dispatcher.mimeTypes, config.getMetadataCacheInterval(), 
+				config.getNegativeCacheSize(), config.getNegativeCacheTtl(), config.isStrongETags());
+		
+		ContentCache contentCache = null;
+		
+		if (config.getContentCacheSize() > 0)
+		{
+			contentCache = new ContentCache(config.getContentCacheSize() * 1024L, config.getContentCacheMaxEntry() * 1024L);
+		}
+		
+		MappedFileCache mappedCache = null;
+		
+		if (config.getMappedCacheSize() > 0)
+		{
+			mappedCache = new MappedFileCache(config.getMappedCacheSize() * 1024L);
+		}
+		
+		SharedContentCache sharedCache = null;
+		
+		if (!config.getSharedCacheFile().isEmpty())
+		{
+			try
+			{
+				sharedCache = new SharedContentCache(config.getSharedCacheFile(), config.getSharedCacheSize() * 1024L, 
+						config.getSharedCacheSlotSize() * 1024);
+			}
+			catch (IOException e)
+			{
+				System.err.println("Cache partag dsactiv : " + e.getMessage());
+			}
+		}
+		
+		// Les versions compresses  la vole sont conserves dans le cache de contenu; 
+		// les versions prcompresses (.gz) sont servies mme s'il est dsactiv
+		ContentEncoder encoder = null;
+		
+		if (config.isCompression())
+		{
+			encoder = new ContentEncoder(config.getCompressionMinSize(), config.getCompressionLevel());
+		}
+		
+		this.siteCache = new SiteCache(metadataCache, contentCache, mappedCache, sharedCache, encoder);
+	}
+	
+	// Cre une configuration  partir des paramtres du constructeur historique
+	private static ServerConfig createConfig(String serverPath, String siteFolder, String ipAddress, int portNum)
+	{
+		ServerConfig config = new ServerConfig();
+		config.setServerPath(serverPath);
+		config.setSiteFolder(siteFolder);
+		config.setIpAddress(ipAddress);
+		config.setPortNum(portNum);
+		return config;
+	}
+	
+	/**
+	 * Arrte le thread d'excution du rpartiteur.
+	 */
+	public void stop()
+	{
+		Thread tmpRunThread = this.runThread;
+		this.runThread = null;
+		if (tmpRunThread != null)
+		{
+//			tmpRunThread.interrupt();
+		}
+		
+		EventLoop[] tmpEventLoops = this.eventLoops;
+		if (tmpEventLoops != null)
+		{
+			for (EventLoop loop : tmpEventLoops)
+			{
+				loop.stop();
+			}
+		}
+	}
+	
+	/* (non-Javadoc)
+	 * @see java.lang.Runnable#run()
+	 */
+	public void run()
+	{
+        Thread myThread = Thread.currentThread();
+        this.runThread = myThread;
+        
+        SiteWatcher watcher = this.startSiteWatcher();
+        
+        if (this.config.isNonBlocking())
+        {
+        	this.runNonBlocking();
+        }
+        else
+        {
+        	this.runBlocking(myThread);
+        }
+        
+        if (watcher != null)
+        {
+        	watcher.stop();
+        }
+        
+        this.siteCache.close();
+	}
+	
+	/**
+	 * Retourne le dictionnaire des extensions et des types MIME correspondants, lu au premier appel 
+	 * dans le fichier des types MIME du dossier du serveur.
+	 * 
+	 * @param serverPath chemin absolu du dossier o se trouvent les fichiers ncessaires au serveur
+	 * @return dictionnaire des extensions et des types MIME correspondants
+	 */
+	public static synchronized Map<String, String> loadMimeTypes(String serverPath)
+	{
 		if (Dispatcher.mimeTypes == null)
 		{
 			Dispatcher.mimeTypes = new HashMap<String, String>();
@@ -105,71 +256,181 @@ public class Dispatcher implements RequestEventProcessor, Runnable
 				}
 			}
 		}
+		
+		return Dispatcher.mimeTypes;
+	}
+	
+	// Dmarre la surveillance du dossier du site, qui invalide les caches ds qu'un fichier change. 
+	// Retourne null si la surveillance est dsactive ou ne peut pas tre mise en place; les caches 
+	// sont alors revalids priodiquement.
+	private SiteWatcher startSiteWatcher()
+	{
+		if (!this.config.isWatchSite())
+		{
+			return null;
+		}
+		
+		// Mme dossier que celui servi par HttpServerThread
+		File f = new File(this.serverPath);
+		String absServerPath = (f.isDirectory() ? f.getAbsolutePath() : ".") + File.separator;
+		File siteRoot = new File(absServerPath + this.siteFolder);
+		
+		if (!siteRoot.isDirectory())
+		{
+			siteRoot = new File(absServerPath + "www");
+		}
+		
+		try
+		{
+			SiteWatcher watcher = new SiteWatcher(siteRoot, this.siteCache);
+			
+			Thread watcherThread = new Thread(watcher);
+			watcherThread.setName("SiteWatcher");
+			watcherThread.setDaemon(true);
+			watcherThread.start();
+			
+			return watcher;
+		}
+		catch (IOException e)
+		{
+			System.err.println("Impossible de surveiller le dossier du site : " + e.getMessage());
+			return null;
+		}
 	}
 	
 	/**
-	 * Arrte le thread d'excution du rpartiteur.
+	 * Cre une instance de serveur pour une connexion accepte en mode non bloquant.
+	 * 
+	 * @param client canal de la connexion accepte
+	 * @return instance de serveur qui servira la connexion
 	 */
-	public void stop()
+	HttpServerThread createServer(SocketChannel client)
 	{
-		Thread tmpRunThread = this.runThread;
-		this.runThread = null;
-		if (tmpRunThread != null)
+		return new HttpServerThread(client, "" + this.transactionId.getAndIncrement(), this.config, this.siteCache, this);
+	}
+	
+	/**
+	 * Retourne la boucle d'vnements  laquelle confier la prochaine connexion accepte ( tour de rle).
+	 * 
+	 * @return boucle d'vnements  laquelle confier la prochaine connexion
+	 */
+	EventLoop nextEventLoop()
+	{
+		EventLoop[] loops = this.eventLoops;
+		
+		return loops[(this.nextLoop.getAndIncrement() & Integer.MAX_VALUE) % loops.length];
+	}
+	
+	// Accepte et sert toutes les connexions dans des boucles d'vnements. La boucle acceptrice 
+	// s'excute dans le thread du rpartiteur et les autres dans leur propre thread.
+	private void runNonBlocking()
+	{
+		ServerSocketChannel listener = null;
+		EventLoop[] loops = new EventLoop[this.config.getEventLoops()];
+		Thread[] loopThreads = new Thread[loops.length];
+		
+		try
 		{
-//			tmpRunThread.interrupt();
+			listener = ServerSocketChannel.open();
+			listener.configureBlocking(false);
+			listener.socket().setReuseAddress(true);
+			listener.socket().bind(new InetSocketAddress(InetAddress.getByName(ipAddress), portNum), this.config.getBacklog());
+			
+			for (int i = 0; i < loops.length; i++)
+			{
+				loops[i] = new EventLoop(this, (i == 0) ? listener : null);
+			}
+			
+			this.eventLoops = loops;
+			
+			// Les boucles se terminent  la demande d'arrt du rpartiteur
+			if (this.runThread != null)
+			{
+				for (int i = 1; i < loops.length; i++)
+				{
+					loopThreads[i] = new Thread(loops[i]);
+					loopThreads[i].setName("EventLoop-" + i);
+					loopThreads[i].start();
+				}
+				
+				loops[0].run();
+				
+				for (int i = 1; i < loops.length; i++)
+				{
+					loops[i].stop();
+					try { loopThreads[i].join(); } catch (InterruptedException unused) {}
+				}
+			}
+		}
+		catch (IOException e)
+		{
+			System.out.println("Erreur d'E/S au binding du socket :\n" + e.getMessage());
+			e.printStackTrace();
+		}
+		finally
+		{
+			if (listener != null)
+			{
+				try { listener.close(); } catch (IOException unused) {}
+			}
 		}
 	}
 	
-	/* (non-Javadoc)
-	 * @see java.lang.Runnable#run()
-	 */
-	public void run()
+	// Accepte les connexions et les confie au pool de threads de travail, ou  un thread virtuel chacune
+	private void runBlocking(Thread myThread)
 	{
-        Thread myThread = Thread.currentThread();
-        this.runThread = myThread;
-        
 		try
 		{
-			ServerSocket listener = new ServerSocket(portNum, BACKLOG, InetAddress.getByName(ipAddress));
+			// Le socket d'coute passe par un canal pour que les sockets accepts en aient un aussi, ce qui permet 
+			// d'envoyer les fichiers sans copie
+			ServerSocketChannel listener = ServerSocketChannel.open();
+			listener.socket().setReuseAddress(true);
+			listener.socket().bind(new InetSocketAddress(InetAddress.getByName(ipAddress), portNum), this.config.getBacklog());
 			
 			// Programme un dlai d'attente de connexion pour viter un blocage
-			listener.setSoTimeout(500);
+			listener.configureBlocking(false);
+			Selector acceptSelector = Selector.open();
+			listener.register(acceptSelector, SelectionKey.OP_ACCEPT);
+			
+			ExecutorService workerPool = null;
+			
+			if (this.config.isVirtualThreads())
+			{
+				workerPool = createVirtualThreadExecutor();
+				
+				if (workerPool == null)
+				{
+					System.out.println("Threads virtuels non disponibles dans cette JVM (Java 21 requis); utilisation du pool de threads.");
+				}
+			}
+			
+			if (workerPool == null)
+			{
+				workerPool = this.createWorkerPool();
+			}
 			
-			Socket clientSocket;
+			SocketChannel client;
 
 			while (myThread == this.runThread) 
 			{
 				try
 				{
-					clientSocket = listener.accept();
+					acceptSelector.select(500);
+					acceptSelector.selectedKeys().clear();
 					
-					// Si le nombre max. de connexions est atteint 
-					while (this.serverThreads.size() >= MAX_CONNECTIONS)
+					if ((client = listener.accept()) == null)
 					{
-						// Attend un peu
-						try { Thread.sleep(100); } catch (InterruptedException unused) {}
-
-						// Enlve les serveurs inactifs de la liste
-						Iterator<HttpServerThread> iter = this.serverThreads.iterator();
-						
-						while (iter.hasNext())
-						{
-						    if (iter.next().isDone()) { iter.remove(); }
-						}
+						continue;
 					}
-
-					// Cre un nouveau serveur 
-					HttpServerThread server = new HttpServerThread(clientSocket, serverPath, siteFolder, Dispatcher.mimeTypes, this);
-					this.serverThreads.add(server);
 					
-					// Cre le thread du serveur en mode daemon pour viter qu'il reste vivant aprs une demande d'arrt du rpartiteur
-					Thread t = new Thread(server);
-					t.setDaemon(true);
-					t.setName("" + this.transactionId++);
-					t.start();
-				}
-				catch (SocketTimeoutException e)
-				{
+					// La connexion est servie en mode bloquant par un thread de travail
+					client.configureBlocking(true);
+					Socket clientSocket = client.socket();
+					
+					// Cre un nouveau serveur et le confie au pool; s'il est satur, la politique de rejet s'applique 
+					HttpServerThread server = new HttpServerThread(clientSocket, "" + this.transactionId.getAndIncrement(), this.config, this.siteCache, this);
+					this.serverThreads.add(server);
+					workerPool.execute((workerPool instanceof ThreadPoolExecutor) ? server : new VirtualThreadTask(server));
 				}
 				catch (IOException e)
 				{
@@ -178,16 +439,27 @@ public class Dispatcher implements RequestEventProcessor, Runnable
 				}
 			}
 			
+			acceptSelector.close();
+			listener.close();
+			
+			// Ferme les connexions qui attendent encore un thread de travail
+			for (Runnable r : workerPool.shutdownNow())
+			{
+				if (r instanceof HttpServerThread)
+				{
+					((HttpServerThread) r).close();
+				}
+			}
+			
 			// Arrte tous les serveurs encore actifs
-			for (HttpServerThread server : serverThreads)
+			for (HttpServerThread server : this.serverThreads)
 			{
-				if (!server.isDone()) { server.stop(); }
+				server.stop();
 			}
 			
 			// 3 secondes de grce...
 			System.out.println("Arrt dans 3 secondes...");
-			try { Thread.sleep(3000); } catch (InterruptedException unused) {}
-
+			try { workerPool.awaitTermination(3, TimeUnit.SECONDS); } catch (InterruptedException unused) {}
 		}
 		catch (IOException e)
 		{
@@ -196,6 +468,120 @@ public class Dispatcher implements RequestEventProcessor, Runnable
 		}
 	}
 	
+	// Cre le pool de threads de travail qui servent les connexions en mode bloquant. Les threads sont rutiliss 
+	// d'une connexion  l'autre; les connexions excdentaires attendent dans une file borne.
+	private ThreadPoolExecutor createWorkerPool()
+	{
+		ThreadPoolExecutor pool = new ThreadPoolExecutor(
+				this.config.getPoolSize(), this.config.getPoolSize(), 
+				0L, TimeUnit.MILLISECONDS, 
+				new ArrayBlockingQueue<Runnable>(this.config.getQueueDepth()), 
+				new WorkerThreadFactory(), 
+				new RejectionHandler(this.config.getRejectionPolicy()))
+		{
+			@Override
+			protected void afterExecute(Runnable r, Throwable t)
+			{
+				// Enlve le serveur de l'ensemble des serveurs actifs ds qu'il a termin
+				Dispatcher.this.serverThreads.remove(r);
+			}
+		};
+		
+		pool.prestartAllCoreThreads();
+		
+		return pool;
+	}
+	
+	// Cre un excuteur qui dmarre un thread virtuel par tche. L'excuteur est obtenu par rflexion 
+	// pour que le serveur puisse encore tre compil et excut avec une version antrieure  Java 21.
+	// Retourne null si les threads virtuels ne sont pas disponibles.
+	private static ExecutorService createVirtualThreadExecutor()
+	{
+		try
+		{
+			Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) factory.invoke(null);
+		}
+		catch (Exception e)
+		{
+			return null;
+		}
+	}
+	
+	// Tche excute dans un thread virtuel; enlve le serveur de l'ensemble des serveurs actifs quand il a termin
+	private class VirtualThreadTask implements Runnable
+	{
+		private final HttpServerThread server;
+		
+		VirtualThreadTask(HttpServerThread server)
+		{
+			this.server = server;
+		}
+		
+		public void run()
+		{
+			try
+			{
+				this.server.run();
+			}
+			finally
+			{
+				Dispatcher.this.serverThreads.remove(this.server);
+			}
+		}
+	}
+	
+	// Fabrique de threads de travail, en mode daemon pour viter qu'ils restent vivants aprs une demande d'arrt du rpartiteur
+	private static class WorkerThreadFactory implements ThreadFactory
+	{
+		private final AtomicInteger threadNum = new AtomicInteger(1);
+		
+		public Thread newThread(Runnable r)
+		{
+			Thread t = new Thread(r);
+			t.setDaemon(true);
+			t.setName("Worker-" + this.threadNum.getAndIncrement());
+			return t;
+		}
+	}
+	
+	// Applique la politique de rejet aux connexions qui ne trouvent pas de place dans le pool de threads de travail
+	private class RejectionHandler implements RejectedExecutionHandler
+	{
+		private final String policy;
+		
+		RejectionHandler(String policy)
+		{
+			this.policy = policy;
+		}
+		
+		public void rejectedExecution(Runnable r, ThreadPoolExecutor pool)
+		{
+			HttpServerThread server = (HttpServerThread) r;
+			
+			if (pool.isShutdown())
+			{
+				server.close();
+			}
+			else if (this.policy.equals(ServerConfig.REJECT_CALLER_RUNS))
+			{
+				// Une seule requte, pour ne pas suspendre l'acceptation pendant toute une connexion persistante
+				server.disableKeepAlive();
+				server.run();
+			}
+			else if (this.policy.equals(ServerConfig.REJECT_DISCARD))
+			{
+				server.close();
+			}
+			else
+			{
+				server.reject();
+			}
+			
+			Dispatcher.this.serverThreads.remove(server);
+		}
+	}
+	
 	/* (non-Javadoc)
 	 * @see http.server.event.RequestEventProcessor#requestEventReceived(http.server.event.RequestEvent)
 	 */
@@ -253,6 +639,12 @@ public class Dispatcher implements RequestEventProcessor, Runnable
 			{
 				content += "Arrt du serveur.\n\n";
 			}
+			// Si la commande est "stats", affiche les statistiques des caches
+			else if (command != null && command.equals("stats"))
+			{
+				response.getHeader().setCacheable(false);
+				content += this.siteCache;
+			}
 
 			response.setContent(content, Charset.forName("ISO-8859-1"));
 			
@@ -0,0 +1,262 @@
+package http.server;
+
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * La classe EventLoop modlise une boucle d'vnements qui,  l'aide d'un slecteur, sert en mode non bloquant 
+ * les requtes de plusieurs connexions  partir d'un seul thread. Chaque connexion appartient  une seule boucle 
+ * pour toute sa dure; l'tat d'une connexion n'est donc jamais partag entre threads.
+ * <p>
+ * Une seule boucle, l'acceptrice, coute les connexions entrantes. Elle les rpartit  tour de rle entre toutes 
+ * les boucles du rpartiteur, elle-mme comprise,  l'aide de {@link #handOff(SocketChannel)}.
+ *
+ * @author Christian Lesage
+ * @author Alexandre Tremblay
+ */
+class EventLoop implements Runnable
+{
+	// Dlai max. d'attente du slecteur en ms
+	private static final int SELECT_TIMEOUT = 500;
+
+	// Rpartiteur qui cre les instances de serveur pour les connexions acceptes
+	private final Dispatcher dispatcher;
+
+	// Canal d'coute des connexions entrantes (null si la boucle n'est pas l'acceptrice)
+	private final ServerSocketChannel listener;
+	
+	// Connexions acceptes par la boucle acceptrice et en attente d'enregistrement auprs de cette boucle
+	private final Queue<SocketChannel> pendingClients = new ConcurrentLinkedQueue<SocketChannel>();
+
+	// Slecteur des canaux prts pour l'E/S
+	private final Selector selector;
+
+	// Indique si la boucle doit continuer  s'excuter
+	private volatile boolean running = true;
+	
+	// Moment de la dernire recherche de connexions inactives
+	private long lastIdleCheck = System.currentTimeMillis();
+
+	/**
+	 * Construit une boucle d'vnements.
+	 *
+	 * @param dispatcher rpartiteur qui cre les instances de serveur pour les connexions acceptes
+	 * @param listener canal d'coute des connexions entrantes en mode non bloquant, ou null si la boucle 
+	 * ne fait que servir les connexions qui lui sont confies
+	 * @throws IOException si le slecteur ne peut pas tre ouvert
+	 */
+	EventLoop(Dispatcher dispatcher, ServerSocketChannel listener) throws IOException
+	{
+		this.dispatcher = dispatcher;
+		this.listener = listener;
+		this.selector = Selector.open();
+
+		if (this.listener != null)
+		{
+			this.listener.register(this.selector, SelectionKey.OP_ACCEPT);
+		}
+	}
+	
+	/**
+	 * Confie  cette boucle une connexion accepte par la boucle acceptrice. La connexion sera enregistre 
+	 * par le thread de cette boucle.
+	 * 
+	 * @param client canal de la connexion accepte
+	 */
+	void handOff(SocketChannel client)
+	{
+		this.pendingClients.add(client);
+		this.selector.wakeup();
+	}
+
+	/**
+	 * Demande l'arrt de la boucle d'vnements.
+	 */
+	void stop()
+	{
+		this.running = false;
+		this.selector.wakeup();
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Runnable#run()
+	 */
+	public void run()
+	{
+		while (this.running)
+		{
+			try
+			{
+				this.selector.select(SELECT_TIMEOUT);
+			}
+			catch (IOException e)
+			{
+				System.err.println("Erreur d'E/S dans la boucle d'vnements :\n" + e.getMessage());
+				e.printStackTrace();
+				break;
+			}
+			
+			this.registerPendingClients();
+			
+			this.closeIdleConnections();
+
+			Iterator<SelectionKey> iter = this.selector.selectedKeys().iterator();
+
+			while (iter.hasNext())
+			{
+				SelectionKey key = iter.next();
+				iter.remove();
+
+				if (!key.isValid())
+				{
+					continue;
+				}
+
+				if (key.isAcceptable())
+				{
+					this.accept();
+				}
+				else
+				{
+					this.serve(key);
+				}
+			}
+		}
+
+		// Ferme toutes les connexions encore ouvertes
+		SocketChannel client;
+		
+		while ((client = this.pendingClients.poll()) != null)
+		{
+			try { client.close(); } catch (IOException unused) {}
+		}
+		
+		for (SelectionKey key : this.selector.keys())
+		{
+			if (key.attachment() instanceof HttpServerThread)
+			{
+				HttpServerThread server = (HttpServerThread) key.attachment();
+				server.stop();
+				server.close();
+			}
+		}
+
+		try { this.selector.close(); } catch (IOException unused) {}
+	}
+
+	// Accepte toutes les connexions en attente et les rpartit entre les boucles
+	private void accept()
+	{
+		SocketChannel client;
+
+		try
+		{
+			while ((client = this.listener.accept()) != null)
+			{
+				EventLoop target = this.dispatcher.nextEventLoop();
+				
+				if (target == this)
+				{
+					this.register(client);
+				}
+				else
+				{
+					target.handOff(client);
+				}
+			}
+		}
+		catch (IOException e)
+		{
+			System.err.println("Erreur d'E/S  l'acceptation d'une connexion :\n" + e.getMessage());
+			e.printStackTrace();
+		}
+	}
+
+	// Ferme les connexions qui attendent une requte depuis plus longtemps que le dlai d'inactivit
+	private void closeIdleConnections()
+	{
+		long now = System.currentTimeMillis();
+		
+		if (now - this.lastIdleCheck < SELECT_TIMEOUT)
+		{
+			return;
+		}
+		
+		this.lastIdleCheck = now;
+		
+		for (SelectionKey key : this.selector.keys())
+		{
+			if (key.attachment() instanceof HttpServerThread && ((HttpServerThread) key.attachment()).isIdle(now))
+			{
+				((HttpServerThread) key.attachment()).expire();
+			}
+		}
+	}
+	
+	// Enregistre auprs du slecteur les connexions confies  cette boucle
+	private void registerPendingClients()
+	{
+		SocketChannel client;
+		
+		while ((client = this.pendingClients.poll()) != null)
+		{
+			this.register(client);
+		}
+	}
+	
+	// Enregistre une connexion auprs du slecteur; la boucle en devient propritaire
+	private void register(SocketChannel client)
+	{
+		try
+		{
+			client.configureBlocking(false);
+			client.register(this.selector, SelectionKey.OP_READ, this.dispatcher.createServer(client));
+		}
+		catch (IOException e)
+		{
+			try { client.close(); } catch (IOException unused) {}
+		}
+	}
+
+	// Fait progresser la lecture de la requte ou l'criture de la rponse d'une connexion
+	private void serve(SelectionKey key)
+	{
+		HttpServerThread server = (HttpServerThread) key.attachment();
+
+		try
+		{
+			if (key.isReadable() && !server.read())
+			{
+				// Connexion ferme par le client entre deux requtes : fin normale de la transaction
+				server.close();
+				return;
+			}
+			
+			// Tente d'crire les rponses ds qu'elles sont prtes, sans attendre le prochain tour du slecteur
+			if (!server.write())
+			{
+				// Continue de lire les requtes d'un pipeline pendant l'criture pour prparer leurs rponses
+				key.interestOps(server.canRead() ? SelectionKey.OP_WRITE | SelectionKey.OP_READ : SelectionKey.OP_WRITE);
+			}
+			// Connexion persistante : attend la requte suivante
+			else if (server.endResponse())
+			{
+				key.interestOps(SelectionKey.OP_READ);
+			}
+			else
+			{
+				server.close();
+			}
+		}
+		catch (IOException e)
+		{
+			server.abort();
+		}
+	}
+}
@@ -5,25 +5,44 @@ import static util.StringUtil.split;
 import http.common.BadHeaderException;
 import http.common.HttpRequest;
 import http.common.HttpRequestHeader;
+import http.common.HttpRequestParser;
 import http.common.HttpResponse;
 import http.common.HttpResponseHeader;
 import http.common.TransferController;
+import http.server.cache.ContentCache;
+import http.server.cache.ContentEncoder;
+import http.server.cache.FileMetadata;
+import http.server.cache.MappedFileCache;
+import http.server.cache.Precompressor;
+import http.server.cache.SharedContentCache;
+import http.server.cache.SiteCache;
 import http.server.event.RequestEvent;
 import http.server.event.RequestEventProcessor;
 
+import java.io.EOFException;
 import java.io.File;
 import java.io.IOException;
-import java.io.OutputStreamWriter;
+import java.io.InputStream;
 import java.net.Socket;
-import java.util.Date;
-import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.net.SocketTimeoutException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.Queue;
 
 import util.DateUtil;
 
 /**
- * Cette classe modlise un serveur HTTP qui rpond  une requte en s'excutant dans un thread.
+ * Cette classe modlise un serveur HTTP qui rpond aux requtes d'une connexion en s'excutant dans un thread.
+ * La connexion est persistante (keep-alive) selon la version du protocole et le champ Connection de la requte.
+ * En mode non bloquant, l'instance n'a pas de thread propre : elle est pilote par une boucle d'vnements 
+ * (voir {@link EventLoop}) qui appelle {@link #read()} et {@link #write()} quand son canal est prt.
+ * <p>
+ * Les requtes envoyes  la suite sans attendre les rponses (pipeline HTTP/1.1) sont servies dans l'ordre. 
+ * En mode non bloquant, les rponses des requtes suivantes sont prpares pendant que la rponse en cours 
+ * est crite, et envoyes dans l'ordre de rception des requtes.
  * 
  * @author Christian Lesage
  * @author Alexandre Tremblay
@@ -31,17 +50,36 @@ import util.DateUtil;
  */
 public class HttpServerThread implements Runnable
 {
+	// Taille max. de l'entte d'une requte reue
+	private static final int MAX_HEADER_SIZE = 8192;
+	
+	// Nombre max. de rponses prpares d'avance pour les requtes d'un pipeline (mode non bloquant)
+	private static final int MAX_PIPELINED_RESPONSES = 4;
+	
+	// Rponse d'erreur 500 encode d'avance, pour le cas o elle ne peut pas tre fabrique
+	private static final byte[] RAW_ERROR_RESPONSE = 
+			"HTTP/1.1 500 Internal Server Error\r\nContent-Length: 0\r\nConnection: close\r\n\r\n".getBytes(Charset.forName("ISO-8859-1"));
+	
 	// Socket de la connexion lie au thread
 	private Socket socket = null;
 	
+	// Canal de la connexion en mode non bloquant (null en mode bloquant)
+	private SocketChannel channel = null;
+	
+	// Nom de la transaction utilis dans le journal
+	private String name;
+	
+	// Indique si les enttes des requtes et des rponses sont affichs dans le journal
+	private final boolean logTransactions;
+	
 	// Chemin absolu du dossier o se trouvent les fichiers ncessaires au serveur
 	private String serverPath;
 	
 	// Chemin relatif du dossier o se trouvent les fichiers du site Web  servir
 	private String siteFolder;
 	
-	// Dictionnaire des extensions et des types MIME correspondants
-	private Map<String, String> mimeTypes;
+	// Caches des fichiers du site (proprits, contenu, projections en mmoire, pages d'erreur)
+	private SiteCache cache;
 	
 	// Objet traitant les vnements de requte reue
 	private RequestEventProcessor evtProcessor;
@@ -52,6 +90,22 @@ public class HttpServerThread implements Runnable
 	// Rponse de sortie
 	private HttpResponse response;
 	
+	// Rponse code dur  envoyer quand mme la rponse d'erreur 500 ne peut pas tre fabrique
+	private ByteBuffer rawResponse = null;
+	
+	// Tampon de lecture des requtes; peut contenir plusieurs requtes d'un pipeline
+	private ByteBuffer readBuffer = null;
+	
+	// Parseur de l'entte des requtes, qui l'analyse dans le tampon de lecture au fil de sa rception
+	private final HttpRequestParser parser = new HttpRequestParser(MAX_HEADER_SIZE, HttpRequestParser.DEFAULT_MAX_FIELDS);
+	
+	// Rponses prpares, dans l'ordre des requtes, en attente d'criture (mode non bloquant); 
+	// la premire est celle en cours d'criture
+	private Queue<HttpResponse> pendingResponses = null;
+	
+	// Rponses dj envoyes, conserves pour servir  nouveau (mode non bloquant)
+	private Queue<HttpResponse> spareResponses = null;
+	
 	// Objet servant  contrler le tlchargement
 	private TransferController tc;
 	
@@ -63,253 +117,1060 @@ public class HttpServerThread implements Runnable
 
 	// Indique si le service de la requte est termin 
 	private boolean done = false;
+	
+	// Dlai d'inactivit en ms aprs lequel une connexion persistante est ferme
+	private int keepAliveTimeout;
+	
+	// Nombre max. de requtes servies sur une mme connexion
+	private int maxRequests;
+	
+	// Nombre de requtes servies sur la connexion
+	private int requestCount = 0;
+	
+	// Indique si la connexion doit rester ouverte aprs la rponse en cours
+	private boolean keepAlive = false;
+	
+	// Moment de la dernire activit sur la connexion (mode non bloquant)
+	private long lastActivity;
+	
+	// Indique si la connexion attend une requte (mode non bloquant)
+	private boolean waitingRequest = true;
+	
+	// Indique qu'aucune autre requte ne sera servie sur la connexion (mode non bloquant)
+	private boolean closing = false;
+	
+	// Indique que le client a ferm son ct de la connexion (mode non bloquant)
+	private boolean inputClosed = false;
 
 	/**
 	 * Construit une instance de serveur HTTP s'excutant dans un thread.  
 	 * 
 	 * @param client socket ouvert pour la communication avec le client
-	 * @param serverPath chemin absolu du dossier o se trouvent les fichiers ncessaires au serveur
-	 * @param siteFolder chemin relatif du dossier o se trouvent les fichiers du site Web  servir
-	 * @param mimeTypes dictionnaire des extensions et des types MIME correspondants 
-	 * @param ep objet traitant les vnements de requte reue et servant de moniteur pour la synchronisation
+	 * @param name nom de la transaction utilis dans le journal
+	 * @param config configuration du serveur
+	 * @param cache caches des fichiers du site
+	 * @param ep objet traitant les vnements de requte reue
 	 */
-	public HttpServerThread(Socket client, String serverPath, String siteFolder, Map<String, String> mimeTypes, RequestEventProcessor ep)
+	public HttpServerThread(Socket client, String name, ServerConfig config, SiteCache cache, RequestEventProcessor ep)
 	{
+		this(name, config, cache, ep);
+		
 		this.socket = client;
+	}
+
+	/**
+	 * Construit une instance de serveur HTTP pilote par une boucle d'vnements en mode non bloquant.  
+	 * 
+	 * @param client canal ouvert en mode non bloquant pour la communication avec le client
+	 * @param name nom de la transaction utilis dans le journal
+	 * @param config configuration du serveur
+	 * @param cache caches des fichiers du site
+	 * @param ep objet traitant les vnements de requte reue
+	 */
+	public HttpServerThread(SocketChannel client, String name, ServerConfig config, SiteCache cache, RequestEventProcessor ep)
+	{
+		this(name, config, cache, ep);
 		
-		File f = new File(serverPath);
+		this.channel = client;
+		this.socket = client.socket();
+		this.readBuffer = ByteBuffer.allocate(MAX_HEADER_SIZE);
+		this.pendingResponses = new ArrayDeque<HttpResponse>(MAX_PIPELINED_RESPONSES);
+		this.spareResponses = new ArrayDeque<HttpResponse>(MAX_PIPELINED_RESPONSES);
+	}
+	
+	// Initialisation commune aux deux modes
+	private HttpServerThread(String name, ServerConfig config, SiteCache cache, RequestEventProcessor ep)
+	{
+		this.name = name;
+		this.logTransactions = config.isLogTransactions();
+		
+		File f = new File(config.getServerPath());
 		this.serverPath = f.isDirectory() ? f.getAbsolutePath() : ".";
 		this.serverPath += FILE_SEP;
 		
-		f = new File(this.serverPath + siteFolder);
-		this.siteFolder = f.isDirectory() ? siteFolder : "www";
+		f = new File(this.serverPath + config.getSiteFolder());
+		this.siteFolder = f.isDirectory() ? config.getSiteFolder() : "www";
+		
+		this.keepAliveTimeout = config.getKeepAliveTimeout() * 1000;
+		this.maxRequests = config.getMaxKeepAliveRequests();
+		this.lastActivity = System.currentTimeMillis();
 		
-		this.mimeTypes = mimeTypes;
+		this.cache = cache;
 
 		this.evtProcessor = ep;
+		
+		// Cre la requte d'entre et la rponse de sortie, rutilises d'une requte  l'autre
+		this.request = new HttpRequest();
+		this.response = new HttpResponse();
+
+		// Limite le dbit du transfert selon la configuration (mode bloquant seulement)
+		this.tc = new TransferController(config.getMaxRate());
 	}
 
 	/**
-	 * Attend une requte, sert celle-ci, puis ferme la connexion.
+	 * Attend une requte, sert celle-ci, puis recommence tant que la connexion est persistante. 
+	 * Ferme ensuite la connexion.
 	 * 
 	 * @see java.lang.Runnable#run()
 	 */
 	public void run()
 	{
-		// Cre la requte d'entre
-		this.request = new HttpRequest();
-
-		// Limite le transfert  1000 Ko/s
-		this.tc = new TransferController(1000);
+		try
+		{
+			// Ferme la connexion si aucune requte n'arrive dans le dlai d'inactivit
+			this.socket.setSoTimeout(this.keepAliveTimeout);
+			
+			InputStream in = this.socket.getInputStream();
+			
+			// Conserv d'une requte  l'autre pour ne pas perdre les requtes suivantes d'un pipeline
+			this.readBuffer = ByteBuffer.allocate(MAX_HEADER_SIZE);
+			
+			do
+			{
+				// Attend de recevoir un header pour la requte; le client a peut-tre ferm la connexion persistante 
+				if (!this.receiveRequest(in))
+				{
+					break;
+				}
+				
+				this.processRequest();
+				
+				this.sendResponse();
+			}
+			while (this.keepAlive && this.responseSent && !this.tc.stopped);
+		}
+		catch (SocketTimeoutException e)
+		{
+			System.out.println(String.format("Transaction %s : Dlai d'inactivit expir.", this.name));
+		}
+		catch (IOException e)
+		{
+			System.out.println(String.format("Transaction %s : Connexion interrompue.", this.name));
+		}
+		finally
+		{
+			this.close();
+		}
+	}
+	
+	/**
+	 * Limite la connexion  une seule requte : la premire rponse annonce Connection: close. Sert quand 
+	 * la connexion est servie dans le thread du rpartiteur, qu'une connexion persistante monopoliserait.
+	 */
+	public void disableKeepAlive()
+	{
+		this.maxRequests = 1;
+	}
+	
+	/**
+	 * Refuse la connexion en rpondant immdiatement avec le code 503 (Service Unavailable), sans attendre 
+	 * la requte, puis ferme la connexion. Sert quand le serveur est satur.
+	 */
+	public void reject()
+	{
+		HttpResponseHeader responseHeader = this.response.getHeader();
+		
+		responseHeader.setStatusCode(503); // Service Unavailable
+		responseHeader.setCacheable(false);
+		responseHeader.setField("Retry-After", "1");
+		
+		this.setErrorContent();
+		this.makeResponseHeader();
 		
-		HttpRequestHeader requestHeader = this.request.getHeader();
-
 		try
 		{
-			// Attend de recevoir un header pour la requte
-			requestHeader.receive(this.socket.getInputStream());
+			this.sendResponse();
+		}
+		catch (IOException e)
+		{
+			System.out.println(String.format("Transaction %s : Connexion interrompue.", this.name));
+		}
+		finally
+		{
+			this.close();
+		}
+	}
+	
+	// Reoit l'entte de la requte suivante dans le tampon de lecture en mode bloquant. Retourne faux si le client 
+	// a ferm la connexion sans commencer une autre requte.
+	private boolean receiveRequest(InputStream in) throws IOException
+	{
+		this.request.reset();
+		this.parser.reset();
+		this.readBuffer.flip();
+		
+		while (!this.parser.parse(this.readBuffer))
+		{
+			this.readBuffer.compact();
 			
-			this.response = new HttpResponse();
-			HttpResponseHeader responseHeader = this.response.getHeader();
-
-			synchronized (this.evtProcessor) 
+			int len = in.read(this.readBuffer.array(), this.readBuffer.position(), this.readBuffer.remaining());
+			
+			if (len < 0)
 			{
-				System.out.println(String.format("Transaction %s : Rception d'une requte", Thread.currentThread().getName()));
-				System.out.print(requestHeader.getText());
+				this.readBuffer.flip();
+				
+				if (!this.parser.isStarted())
+				{
+					return false;
+				}
+				
+				this.parser.fail();
+				break;
 			}
+			
+			this.readBuffer.position(this.readBuffer.position() + len);
+			this.readBuffer.flip();
+		}
 		
+		this.request.getHeader().receive(this.parser, this.readBuffer);
+		
+		// Retire l'entte du tampon en conservant les requtes suivantes
+		this.readBuffer.compact();
+		
+		return true;
+	}
+	
+	// Envoie la rponse prpare sur le socket en mode bloquant
+	private void sendResponse() throws IOException
+	{
+		// Si le socket est encore ouvert
+		if (!this.socket.isClosed())
+		{
+			if (this.rawResponse == null)
+			{
+				try
+				{
+					// Le canal du socket, s'il existe, permet d'envoyer les fichiers sans copie
+					this.responseSent = this.response.send(this.socket.getOutputStream(), this.socket.getChannel(), this.tc);
+				}
+				catch (BadHeaderException e) // L'entte a dj t fabrique; ne devrait pas arriver
+				{
+					System.out.println(String.format("Transaction %s : Erreur 500", this.name));
+				}
+			}
+			else
+			{
+				this.socket.getOutputStream().write(RAW_ERROR_RESPONSE);
+				this.socket.getOutputStream().flush();
+				this.responseSent = true;
+			}
+		}
+		else
+		{
+			System.out.println(String.format("Transaction %s : Socket dj ferm !", this.name));
+		}
+	}
+	
+	/**
+	 * Lit les donnes disponibles sur le canal en mode non bloquant. Les requtes dont l'entte a t reue 
+	 * au complet sont servies dans l'ordre et leurs rponses sont prtes  tre crites avec {@link #write()}.
+	 * 
+	 * @return faux si le client a ferm la connexion entre deux requtes et qu'il ne reste rien  envoyer, vrai sinon
+	 * @throws IOException si la connexion a t interrompue, p. ex. ferme par le client au milieu d'une requte
+	 */
+	boolean read() throws IOException
+	{
+		if (this.channel.read(this.readBuffer) < 0)
+		{
+			this.inputClosed = true;
+		}
+		else
+		{
+			this.lastActivity = System.currentTimeMillis();
+		}
+		
+		this.processBufferedRequests();
+		
+		// Plus rien  servir sur une connexion ferme par le client
+		if (this.inputClosed && this.pendingResponses.isEmpty() && this.rawResponse == null)
+		{
+			// Fermeture normale d'une connexion persistante,  moins qu'une requte ait t entame
+			if (this.parser.isStarted())
+			{
+				throw new EOFException();
+			}
+			
+			return false;
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * Indique si la connexion peut lire d'autres requtes en mode non bloquant, c'est--dire si le client 
+	 * n'a pas ferm la connexion et que le pipeline n'est pas plein. 
+	 * 
+	 * @return vrai si la lecture doit se poursuivre, faux sinon
+	 */
+	boolean canRead()
+	{
+		return !this.inputClosed && !this.closing && this.pendingResponses.size() < MAX_PIPELINED_RESPONSES;
+	}
+	
+	// Sert, dans l'ordre, les requtes reues au complet dans le tampon de lecture tant que le pipeline n'est pas plein
+	private void processBufferedRequests() throws IOException
+	{
+		while (!this.closing && this.pendingResponses.size() < MAX_PIPELINED_RESPONSES)
+		{
+			// Reprend l'analyse l o elle s'tait arrte; une entte trop longue met le parseur en erreur
+			this.readBuffer.flip();
+			
+			if (!this.parser.parse(this.readBuffer))
+			{
+				// Entte incomplte : attend la suite
+				this.readBuffer.compact();
+				return;
+			}
+			
+			this.request.reset();
+			this.request.getHeader().receive(this.parser, this.readBuffer);
+			this.parser.reset();
+			
+			// Retire l'entte du tampon en conservant les requtes suivantes
+			this.readBuffer.compact();
+			
+			// La rponse est prpare dans une instance libre, puis mise en file derrire celles dj prtes
+			HttpResponse spare = this.spareResponses.poll();
+			this.response = spare != null ? spare : new HttpResponse();
+			
+			this.waitingRequest = false;
+			this.processRequest();
+			
+			if (this.rawResponse != null)
+			{
+				// Rponse code dur : sera crite aprs celles dj prtes
+				this.closing = true;
+			}
+			else
+			{
+				this.pendingResponses.add(this.response);
+				this.closing = !this.keepAlive;
+			}
+		}
+	}
+	
+	/**
+	 * crit les rponses prpares sur le canal en mode non bloquant, dans l'ordre des requtes. Chaque fois 
+	 * qu'une rponse a t envoye au complet, la requte suivante du pipeline est servie si elle a t reue.
+	 * 
+	 * @return vrai si toutes les rponses prtes ont t envoyes, faux s'il reste des donnes  crire
+	 * @throws IOException si la connexion a t interrompue 
+	 */
+	boolean write() throws IOException
+	{
+		HttpResponse current;
+		
+		while ((current = this.pendingResponses.peek()) != null)
+		{
 			try
 			{
-				// Tente de parser le header
-				requestHeader.parse();
-				
-				// Envoie un vnement de requte reue pour permettre d'effectuer un traitement diffrent
-				RequestEvent evt = new RequestEvent(this);
-				this.evtProcessor.requestEventReceived(evt);
+				if (!current.write(this.channel, this.tc))
+				{
+					return false;
+				}
+			}
+			catch (BadHeaderException e) // L'entte a dj t fabrique; ne devrait pas arriver
+			{
+				System.out.println(String.format("Transaction %s : Erreur 500", this.name));
+			}
+			
+			this.pendingResponses.remove();
+			this.spareResponses.add(current);
+			this.responseSent = true;
+			this.lastActivity = System.currentTimeMillis();
+			
+			if (this.tc.stopped)
+			{
+				this.closing = true;
+				return true;
+			}
+			
+			// Libre une place dans le pipeline pour la requte suivante
+			this.processBufferedRequests();
+		}
+		
+		// Rponse code dur, toujours la dernire sur la connexion
+		if (this.rawResponse != null)
+		{
+			this.channel.write(this.rawResponse);
+			
+			if (this.rawResponse.hasRemaining())
+			{
+				return false;
+			}
+			
+			this.responseSent = true;
+		}
+		
+		this.waitingRequest = true;
+		
+		return true;
+	}
+	
+	/**
+	 * Indique si la connexion reste ouverte une fois toutes les rponses prtes envoyes par {@link #write()}.
+	 * 
+	 * @return vrai si la connexion reste ouverte pour d'autres requtes, faux si elle doit tre ferme
+	 */
+	boolean endResponse()
+	{
+		return !this.closing && !this.inputClosed && !this.tc.stopped;
+	}
+	
+	/**
+	 * Indique si la connexion attend une requte depuis plus longtemps que le dlai d'inactivit.
+	 * 
+	 * @param now moment prsent en ms
+	 * @return vrai si le dlai d'inactivit est expir, faux sinon
+	 */
+	boolean isIdle(long now)
+	{
+		return this.waitingRequest && this.keepAliveTimeout > 0 && now - this.lastActivity > this.keepAliveTimeout;
+	}
+	
+	/**
+	 * Indique dans le journal que le dlai d'inactivit est expir et termine la transaction.
+	 */
+	void expire()
+	{
+		System.out.println(String.format("Transaction %s : Dlai d'inactivit expir.", this.name));
+		
+		this.close();
+	}
+	
+	/**
+	 * Indique dans le journal que la connexion a t interrompue et termine la transaction.
+	 */
+	void abort()
+	{
+		System.out.println(String.format("Transaction %s : Connexion interrompue.", this.name));
+		
+		this.close();
+	}
+	
+	/**
+	 * Termine la transaction et ferme la connexion.
+	 */
+	void close()
+	{
+		if (this.logTransactions)
+		{
+			if (this.responseSent)
+			{
+				log(String.format("Transaction %s : Fin de la transaction. La rponse a t envoye au complet.%n%n", this.name));
+			}
+			else
+			{
+				log(String.format("Transaction %s : Fin de la transaction. La rponse n'a pas t envoye au complet.%n%n", this.name));
+			}
+		}
+		
+		if (this.response != null)
+		{
+			this.response.close();
+		}
+		
+		// Libre les rponses d'un pipeline qui n'ont pas pu tre envoyes
+		if (this.pendingResponses != null)
+		{
+			for (HttpResponse pending : this.pendingResponses)
+			{
+				pending.close();
+			}
+		}
+
+		if (!this.socket.isClosed())
+		{
+			try { this.socket.close(); } catch (IOException unused) {}
+		}
+		
+		this.done = true;
+	}
+	
+	// crit une entre dans le journal en un seul appel pour que les entres des diffrentes transactions 
+	// ne s'entremlent pas. Aucun moniteur n'est retenu, ce qui vite d'immobiliser le thread porteur 
+	// d'un thread virtuel pendant l'criture. Le texte n'est fabriqu que si les transactions sont journalises.
+	private static void log(String text)
+	{
+		System.out.print(text);
+	}
+	
+	// Journalise l'entte encod de la rponse courante
+	private void logResponse()
+	{
+		if (this.logTransactions)
+		{
+			log(String.format("Transaction %s : Envoi de la rponse%n", this.name) + this.response.getHeaderText());
+		}
+	}
+	
+	// Sert la requte dont l'entte a t reue et prpare la rponse  envoyer
+	private void processRequest()
+	{
+		HttpRequestHeader requestHeader = this.request.getHeader();
+		
+		this.response.reset();
+		this.rawResponse = null;
+		this.responseSent = false;
+		HttpResponseHeader responseHeader = this.response.getHeader();
+
+		if (this.logTransactions)
+		{
+			log(String.format("Transaction %s : Rception d'une requte%n", this.name) + requestHeader.getText());
+		}
+	
+		try
+		{
+			// Tente de parser le header
+			requestHeader.parse();
+			
+			// Envoie un vnement de requte reue pour permettre d'effectuer un traitement diffrent
+			RequestEvent evt = new RequestEvent(this);
+			this.evtProcessor.requestEventReceived(evt);
 
-				// Si l'vnement n'a pas t annul 
-				if (!evt.cancel) 
+			// Si l'vnement n'a pas t annul 
+			if (!evt.cancel) 
+			{
+				// Si la requte utilise la mthode GET ou HEAD
+				if (requestHeader.getMethod().equals("GET") || requestHeader.getMethod().equals("HEAD"))
 				{
-					// Si la requte utilise la mthode GET ou HEAD
-					if (requestHeader.getMethod().equals("GET") || requestHeader.getMethod().equals("HEAD"))
+					if (requestHeader.getMethod().equals("HEAD"))
+					{
+						this.response.setContentSendable(false);
+					}
+					
+					// La rponse sera cachable puisqu'on s'apprte  servir un fichier du systme de fichiers 
+					responseHeader.setCacheable(true);
+					
+					String filePath = this.serverPath + this.siteFolder + requestHeader.getPath();
+					
+					// Remplace les / par autre chose au besoin
+					if (FILE_SEP != "/")
 					{
-						if (requestHeader.getMethod().equals("HEAD"))
+						filePath = join(split(filePath, "/"), FILE_SEP);
+					}
+
+//					System.out.println("Fichier  servir : " + filePath);
+
+					FileMetadata file = this.cache.getMetadataCache().get(filePath);
+					
+					// Fichier inexistant ?
+					if (!file.exists()) 
+					{
+						responseHeader.setStatusCode(404); // Not Found
+					}
+					// Rpertoire ? Permission lecture manquante ?
+					else if (file.isDirectory() || !file.canRead()) 
+					{
+						responseHeader.setStatusCode(403); // Forbidden
+					}
+					else
+					{
+						// Le contenu d'un fichier compressible varie selon les codages accepts par le client
+						ContentEncoder encoder = this.cache.getEncoder();
+						boolean compressible = encoder != null && encoder.isCompressible(file.getMimeType(), file.getLength());
+						
+						String etag = this.cache.getMetadataCache().getETag(file);
+						String matchedETag = this.matchETag(requestHeader, etag, compressible);
+						String ifModifiedSince = requestHeader.getField("If-Modified-Since");
+						
+						// Si le client a dj une version  jour : tiquette reconnue, ou sinon date demande 
+						// non antrieure  date du fichier ( la seconde prs)
+						if (requestHeader.getField("If-None-Match") != null ? matchedETag != null 
+								: ifModifiedSince != null && isNotModifiedSince(ifModifiedSince, file))
 						{
-							this.response.setContentSendable(false);
+							this.setMetadataResponse(304, file, 0, (matchedETag != null) ? matchedETag : etag, null, compressible); // Not Modified
+							return;
 						}
 						
-						// La rponse sera cachable puisqu'on s'apprte  servir un fichier du systme de fichiers 
-						responseHeader.setCacheable(true);
+						// Requte HEAD : entte de la version que recevrait une requte GET, sans ouvrir le fichier quand 
+						// cette version est le fichier lui-mme ou sa version prcompresse
+						if (!this.response.isContentSendable())
+						{
+							String headEncoding = compressible ? encoder.chooseEncoding(requestHeader) : null;
+							FileMetadata gzFile = ContentEncoder.GZIP.equals(headEncoding) ? this.getPrecompressed(file) : null;
+							
+							if (gzFile != null)
+							{
+								this.setMetadataResponse(200, file, gzFile.getLength(), encodedETag(etag, ContentEncoder.GZIP), ContentEncoder.GZIP, compressible); // OK
+								return;
+							}
+							
+							if (headEncoding == null)
+							{
+								this.setMetadataResponse(200, file, file.getLength(), etag, null, compressible); // OK
+								return;
+							}
+							
+							// Compression  la vole : la taille et l'tiquette sont celles de la version compresse 
+							// du cache de contenu, obtenues comme pour une requte GET
+						}
 						
-						String filePath = this.serverPath + this.siteFolder + requestHeader.getPath();
+						this.response.setFileName(file.getPath());
 						
-						// Remplace les / par autre chose au besoin
-						if (FILE_SEP != "/")
+						if (compressible)
 						{
-							filePath = join(split(filePath, "/"), FILE_SEP);
+							responseHeader.setField("Vary", "Accept-Encoding");
 						}
+						
+						responseHeader.setStatusCode(200); // OK
 
-//						System.out.println("Fichier  servir : " + filePath);
+						if (file.getMimeType() != null) 
+						{
+							responseHeader.setField("Content-Type", file.getMimeType());
+						}
 
-						File f = new File(filePath);
+						responseHeader.setField("Cache-Control", "public");
+						responseHeader.setField("Last-Modified", file.getLastModifiedText());
+						
+						responseHeader.setField("Accept-Ranges", "bytes");
+						
+						// Plages demandes; un If-Range prim fait envoyer le contenu complet
+						long[][] ranges = null;
+						
+						if (this.isRangeCurrent(requestHeader, file, etag))
+						{
+							ranges = requestHeader.getByteRanges(file.getLength());
+						}
+						
+						// Les plages portent sur le contenu non cod
+						String encoding = (compressible && ranges == null) ? encoder.chooseEncoding(requestHeader) : null;
+						
+						// Une version prcompresse  jour est servie comme un fichier ordinaire, sans compression  la vole
+						FileMetadata gzFile = ContentEncoder.GZIP.equals(encoding) ? this.getPrecompressed(file) : null;
 						
-						// Fichier inexistant ?
-						if (!f.exists()) 
+						if (gzFile != null)
 						{
-							responseHeader.setStatusCode(404); // Not Found
+							file = gzFile;
+							encoding = null;
+							this.response.setFileName(file.getPath());
+							responseHeader.setField("Content-Encoding", ContentEncoder.GZIP);
 						}
-						// Rpertoire ? Permission lecture manquante ?
-						else if (f.isDirectory() || !f.canRead()) 
+						
+						responseHeader.setField("Content-Length", file.getLengthText());
+						
+						if (ranges != null && ranges.length == 0)
 						{
-							responseHeader.setStatusCode(403); // Forbidden
+							// Aucune plage satisfaisable : la page d'erreur ventuelle remplacera le contenu
+							responseHeader.setStatusCode(416); // Range Not Satisfiable
+							responseHeader.setField("Content-Range", "bytes */" + file.getLength());
+							responseHeader.setField("Content-Length", "0");
+							this.response.setFileName("");
 						}
 						else
 						{
-							this.response.setFileName(f.getAbsolutePath());
-
-							// Si date demande n'est pas antrieure  date du fichier
-							if (requestHeader.getField("If-Modified-Since") != null 
-									&& !DateUtil.parseDate(requestHeader.getField("If-Modified-Since")).before(
-											DateUtil.parseDate(DateUtil.formatDate(new Date(f.lastModified())))))
+							this.setCachedContent(file, encoding);
+							
+							if (ranges != null)
 							{
-								responseHeader.setStatusCode(304); // Not Modified
-							}
-							else
-							{
-								responseHeader.setStatusCode(200); // OK
-
-								Pattern pFileExtension = Pattern.compile("\\.([^\\.]+)\\Z");
-								Matcher mFileExtension = pFileExtension.matcher(this.response.getFileName());
-
-								if (mFileExtension.find()) 
-								{
-									String fileMimeType = this.mimeTypes.get(mFileExtension.group(1));
-									responseHeader.setField("Content-Type", fileMimeType);
-								}
-
-								responseHeader.setField("Cache-Control", "public");
-								responseHeader.setField("Last-Modified", DateUtil.formatDate(new Date(f.lastModified())));
-								responseHeader.setField("Content-Length", f.length() + "");
+								responseHeader.setStatusCode(206); // Partial Content
+								this.response.setRanges(ranges, file.getLength());
 							}
 						}
+						
+						if (responseHeader.getStatusCode() != 416)
+						{
+							String contentEncoding = responseHeader.getField("Content-Encoding");
+							responseHeader.setField("ETag", (contentEncoding != null) ? encodedETag(etag, contentEncoding) : etag);
+						}
 					}
-					else // POST, PUT, DELETE, TRACE, OPTIONS, CONNECT, PATCH
+				}
+				else // POST, PUT, DELETE, TRACE, OPTIONS, CONNECT, PATCH
+				{
+					responseHeader.setStatusCode(501); // Not Implemented
+				}
+			}
+		}
+		catch (BadHeaderException e) // Pas capable d'analyser le header de la requte du client
+		{
+			responseHeader.setStatusCode(400); // Bad Request
+		}
+		
+		this.setErrorContent();
+		this.setConnectionFields();
+		this.makeResponseHeader();
+	}
+	
+	// Dtermine si la connexion reste ouverte aprs la rponse et programme les champs correspondants. 
+	// En HTTP/1.1, la connexion est persistante  moins que le client demande Connection: close;  
+	// en HTTP/1.0, elle ne l'est que si le client demande Connection: keep-alive.
+	private void setConnectionFields()
+	{
+		HttpRequestHeader requestHeader = this.request.getHeader();
+		HttpResponseHeader responseHeader = this.response.getHeader();
+		
+		int statusCode = responseHeader.getStatusCode();
+		
+		// La fin du contenu doit pouvoir tre dtermine sans fermer la connexion
+		boolean hasLength = responseHeader.getField("Content-Length") != null || statusCode == 304 || statusCode == 204;
+		
+		if (this.updateKeepAlive(hasLength && statusCode != 400))
+		{
+			responseHeader.setField("Connection", "keep-alive");
+			// Sans dlai d'inactivit, le paramtre timeout est omis : timeout=0 annoncerait une expiration immdiate
+			String max = "max=" + (this.maxRequests - this.requestCount);
+			responseHeader.setField("Keep-Alive", (this.keepAliveTimeout > 0) ? "timeout=" + this.keepAliveTimeout / 1000 + ", " + max : max);
+		}
+		else
+		{
+			responseHeader.setField("Connection", "close");
+		}
+	}
+	
+	// Dtermine si la connexion reste ouverte aprs la rponse en cours, selon la requte et le nombre de requtes 
+	// dj servies; la rponse doit le permettre (fin du contenu dterminable sans fermer la connexion). 
+	// Une requte qui annonce un contenu ferme la connexion.
+	private boolean updateKeepAlive(boolean allowed)
+	{
+		HttpRequestHeader requestHeader = this.request.getHeader();
+		String connection = requestHeader.getField("Connection");
+		
+		if (requestHeader.getProtocol().equals("HTTP/1.1"))
+		{
+			this.keepAlive = connection == null || !connection.toLowerCase().contains("close");
+		}
+		else
+		{
+			this.keepAlive = connection != null && connection.toLowerCase().contains("keep-alive");
+		}
+		
+		// Le contenu ventuel de la requte n'est jamais lu : il serait pris pour la requte suivante
+		this.keepAlive = this.keepAlive && allowed && !hasRequestBody(requestHeader) && ++this.requestCount < this.maxRequests;
+		
+		return this.keepAlive;
+	}
+	
+	// Indique si la requte annonce un contenu (Content-Length non nul ou illisible, ou Transfer-Encoding quelconque)
+	private static boolean hasRequestBody(HttpRequestHeader requestHeader)
+	{
+		for (String field : requestHeader.getFieldKeySet())
+		{
+			if (field.equalsIgnoreCase("Transfer-Encoding"))
+			{
+				return true;
+			}
+			
+			if (field.equalsIgnoreCase("Content-Length"))
+			{
+				try
+				{
+					if (Long.parseLong(requestHeader.getField(field).trim()) != 0)
 					{
-						responseHeader.setStatusCode(501); // Not Implemented
+						return true;
 					}
 				}
+				catch (NumberFormatException e)
+				{
+					return true;
+				}
 			}
-			catch (BadHeaderException e) // Pas capable d'analyser le header de la requte du client
+		}
+		
+		return false;
+	}
+	
+	// Indique si le fichier n'a pas t modifi depuis la date spcifie, en secondes depuis l'poque. Le client renvoie 
+	// le plus souvent la valeur Last-Modified reue telle quelle : elle est alors reconnue sans tre analyse.
+	// Une date illisible est ignore.
+	private static boolean isNotModifiedSince(String date, FileMetadata file)
+	{
+		if (date.equals(file.getLastModifiedText()))
+		{
+			return true;
+		}
+		
+		long since = DateUtil.parseSeconds(date);
+		
+		return since != DateUtil.INVALID_DATE && since >= file.getLastModified() / 1000;
+	}
+	
+	// Retourne la version prcompresse ( .gz )  jour du fichier spcifi, ou null s'il n'y en a pas
+	private FileMetadata getPrecompressed(FileMetadata file)
+	{
+		FileMetadata gzFile = this.cache.getMetadataCache().get(file.getPath() + Precompressor.GZIP_SUFFIX);
+		
+		if (gzFile.exists() && !gzFile.isDirectory() && gzFile.canRead() && gzFile.getLastModified() == file.getLastModified())
+		{
+			return gzFile;
+		}
+		
+		return null;
+	}
+	
+	// Prpare une rponse sans contenu (304, ou 200  une requte HEAD)  partir des seules proprits du fichier, 
+	// sans l'ouvrir. L'entte est crit d'un trait et encod directement, sans passer par les champs de l'entte modlis.
+	private void setMetadataResponse(int statusCode, FileMetadata file, long length, String etag, String contentEncoding, boolean compressible)
+	{
+		HttpResponseHeader responseHeader = this.response.getHeader();
+		responseHeader.setStatusCode(statusCode);
+		
+		boolean keepAlive = this.updateKeepAlive(true);
+		String date = DateUtil.getCurrentDate();
+		int capacity = 512;
+		
+		while (true)
+		{
+			ByteBuffer buf = this.response.startEncodedHeader(capacity);
+			
+			try
 			{
-				responseHeader.setStatusCode(400); // Bad Request
+				this.putMetadataHeader(buf, statusCode, date, file, length, etag, contentEncoding, compressible, keepAlive);
+				break;
+			}
+			catch (BufferOverflowException e) // Type MIME ou tiquette inhabituellement longs
+			{
+				capacity *= 2;
+			}
+		}
+		
+		this.response.endEncodedHeader();
+		
+		this.logResponse();
+	}
+	
+	// crit l'entte d'une rponse produite  partir des mtadonnes d'un fichier
+	private void putMetadataHeader(ByteBuffer buf, int statusCode, String date, FileMetadata file, long length, String etag, 
+			String contentEncoding, boolean compressible, boolean keepAlive)
+	{
+		HttpResponseHeader.putStatusLine(buf, statusCode);
+		HttpResponseHeader.putField(buf, "Date", date);
+		HttpResponseHeader.putField(buf, "Server", HttpResponseHeader.SERVER_NAME);
+		HttpResponseHeader.putField(buf, "ETag", etag);
+		HttpResponseHeader.putField(buf, "Cache-Control", "public");
+		
+		if (compressible)
+		{
+			HttpResponseHeader.putField(buf, "Vary", "Accept-Encoding");
+		}
+		
+		if (statusCode == 200)
+		{
+			if (file.getMimeType() != null)
+			{
+				HttpResponseHeader.putField(buf, "Content-Type", file.getMimeType());
 			}
 			
-			// Si le socket est encore ouvert
-			if (!this.socket.isClosed())
+			HttpResponseHeader.putField(buf, "Last-Modified", file.getLastModifiedText());
+			HttpResponseHeader.putField(buf, "Accept-Ranges", "bytes");
+			
+			if (contentEncoding != null)
 			{
-				int statusCode = responseHeader.getStatusCode();
-
-				// S'il s'agit d'un code d'erreur
-				if (statusCode >= 400)
+				HttpResponseHeader.putField(buf, "Content-Encoding", contentEncoding);
+			}
+			
+			HttpResponseHeader.putField(buf, "Content-Length", length);
+		}
+		
+		if (keepAlive)
+		{
+			HttpResponseHeader.putField(buf, "Connection", "keep-alive");
+			HttpResponseHeader.putFieldName(buf, "Keep-Alive");
+			
+			if (this.keepAliveTimeout > 0)
+			{
+				HttpResponseHeader.putText(buf, "timeout=");
+				HttpResponseHeader.putNumber(buf, this.keepAliveTimeout / 1000);
+				HttpResponseHeader.putText(buf, ", ");
+			}
+			
+			HttpResponseHeader.putText(buf, "max=");
+			HttpResponseHeader.putNumber(buf, this.maxRequests - this.requestCount);
+			HttpResponseHeader.putLineEnd(buf);
+		}
+		else
+		{
+			HttpResponseHeader.putField(buf, "Connection", "close");
+		}
+		
+		HttpResponseHeader.putLineEnd(buf);
+	}
+	
+	// Indique si les plages demandes peuvent tre servies : sans champ If-Range, si l'tiquette qu'il porte est 
+	// l'tiquette forte du fichier, ou si la date qu'il porte est celle du fichier ( la seconde prs). 
+	// Une tiquette faible ou une date illisible fait envoyer le contenu complet.
+	private boolean isRangeCurrent(HttpRequestHeader requestHeader, FileMetadata file, String etag)
+	{
+		String ifRange = requestHeader.getField("If-Range");
+		
+		if (ifRange == null)
+		{
+			return true;
+		}
+		
+		if (ifRange.startsWith("\"") || ifRange.startsWith("W/"))
+		{
+			return requestHeader.matchesETag("If-Range", etag, true);
+		}
+		
+		return DateUtil.parseSeconds(ifRange) == file.getLastModified() / 1000;
+	}
+	
+	// Retourne l'tiquette du champ If-None-Match qui dsigne la version actuelle du fichier : son tiquette, ou celle 
+	// de l'une de ses versions compresses si le fichier est compressible. Retourne null si aucune ne figure dans le champ.
+	private String matchETag(HttpRequestHeader requestHeader, String etag, boolean compressible)
+	{
+		if (requestHeader.matchesETag("If-None-Match", etag, false))
+		{
+			return etag;
+		}
+		
+		if (compressible)
+		{
+			String[] encodings = {ContentEncoder.GZIP, ContentEncoder.DEFLATE};
+			
+			for (String encoding : encodings)
+			{
+				String encodedETag = encodedETag(etag, encoding);
+				
+				if (requestHeader.matchesETag("If-None-Match", encodedETag, false))
+				{
+					return encodedETag;
+				}
+			}
+		}
+		
+		return null;
+	}
+	
+	// Retourne l'tiquette d'une version compresse : faible, puisque la compression  la vole ne produit pas 
+	// toujours les mmes octets, et distincte de celle du contenu non compress
+	private static String encodedETag(String etag, String encoding)
+	{
+		String opaque = etag.startsWith("W/") ? etag.substring(2) : etag;
+		
+		return "W/" + opaque.substring(0, opaque.length() - 1) + "-" + encoding + "\"";
+	}
+	
+	// Sert le contenu  partir du cache partag ou du cache du processus s'il est assez petit pour y tre, 
+	// sinon  partir de sa projection en mmoire. Si le fichier n'est dans aucun cache, il sera lu au moment de l'envoi.
+	// Un contenu en cache est compress avec le codage spcifi (null pour aucun), si cela le raccourcit.
+	private void setCachedContent(FileMetadata file, String encoding)
+	{
+		SharedContentCache sharedCache = this.cache.getSharedCache();
+		ContentCache contentCache = this.cache.getContentCache();
+		MappedFileCache mappedCache = this.cache.getMappedCache();
+		
+		try
+		{
+			byte[] content = null;
+			
+			if (sharedCache != null)
+			{
+				content = sharedCache.get(file.getPath(), file.getLastModified(), file.getLength());
+			}
+			
+			if (content == null && contentCache != null)
+			{
+				content = contentCache.get(file.getPath(), file.getLastModified(), file.getLength());
+			}
+			
+			if (content != null && encoding != null && contentCache != null)
+			{
+				byte[] encoded = contentCache.getEncoded(file.getPath(), file.getLastModified(), content, encoding, this.cache.getEncoder());
+				
+				if (encoded.length < content.length)
+				{
+					content = encoded;
+					this.response.getHeader().setField("Content-Encoding", encoding);
+				}
+			}
+			
+			if (content != null)
+			{
+				this.response.setContent(content);
+			}
+			// Un envoi  dbit limit relit le fichier par petits morceaux; la projection ne servirait  rien
+			else if (mappedCache != null && (this.channel != null || this.tc.getMaxRate() == 0))
+			{
+				MappedFileCache.MappedFile mapped = mappedCache.acquire(file.getPath(), file.getLastModified(), file.getLength());
+				
+				if (mapped != null)
 				{
-					File fError = new File(this.serverPath + "error_" + statusCode + ".htm");
+					this.response.setContent(mapped.slice(), mapped);
+				}
+			}
+		}
+		catch (IOException e) // Le fichier sera lu au moment de l'envoi
+		{
+		}
+	}
+	
+	// Associe  la rponse le contenu du fichier d'erreur correspondant  son code, s'il s'agit d'un code d'erreur
+	private void setErrorContent()
+	{
+		HttpResponseHeader responseHeader = this.response.getHeader();
+		int statusCode = responseHeader.getStatusCode();
 
-					// Si un fichier de rponse existe pour ce type d'erreur  
-					if (fError.exists())
-					{
-						this.response.setFileName(fError.getAbsolutePath());
+		// S'il s'agit d'un code d'erreur
+		if (statusCode >= 400)
+		{
+			FileMetadata errorFile = this.cache.getMetadataCache().get(this.serverPath + "error_" + statusCode + ".htm");
 
-						responseHeader.setField("Content-Type", "text/html");
-						responseHeader.setField("Content-Length", fError.length() + "");
-					}
-					else if (responseHeader.getField("Content-Length") == null)
-					{
-						responseHeader.setField("Content-Length", "0");
-					}
-				}
+			// Si un fichier de rponse existe pour ce type d'erreur  
+			if (errorFile.exists())
+			{
+				this.response.setFileName(errorFile.getPath());
 
-				try // Fabrique le header et envoie la rponse
+				responseHeader.setField("Content-Type", "text/html");
+				responseHeader.setField("Content-Length", errorFile.getLengthText());
+				
+				// Sert la page  partir de la mmoire plutt que du disque
+				try
 				{
-					
-					synchronized (this.evtProcessor) 
-					{
-						System.out.println(String.format("Transaction %s : Envoi de la rponse", Thread.currentThread().getName()));
-						responseHeader.make();
-						
-						System.out.print(responseHeader.getText());
-					}
-
-					// Envoie la rponse
-					this.responseSent = this.response.send(this.socket.getOutputStream(), this.tc);
-					
+					this.response.setContent(this.cache.getErrorPages().get(errorFile));
 				}
-				catch (BadHeaderException e1) // Pas capable de crer le header de rponse.
+				catch (IOException e) // Le fichier sera lu au moment de l'envoi
 				{
-					try // Essaie de crer une nouvelle rponse avec le code 500 
-					{
-						this.response = new HttpResponse();
-						responseHeader = this.response.getHeader();
-						
-						if (e1.getMessage() != null)
-						{
-							response.setContent(e1.getMessage().getBytes());
-						}
-						else
-						{
-							responseHeader.setField("Content-Length", "0");
-						}
-						
-						responseHeader.setStatusCode(500); // Internal Server Error
-						responseHeader.make();
-						
-						System.out.print(responseHeader.getText());
-
-						// Envoie la rponse
-						this.responseSent = this.response.send(this.socket.getOutputStream(), this.tc);
-					}
-					catch (BadHeaderException e2) // Pas capable..
-					{
-						System.out.println(String.format("Transaction %s : Erreur 500", Thread.currentThread().getName()));
-						
-						// Envoie une rponse code dur directement sur le socket. 
-						OutputStreamWriter osw = new OutputStreamWriter(this.socket.getOutputStream());
-						osw.write("HTTP/1.1 500 Internal Server Error\r\nContent-Length: 0\r\nConnection: close\r\n\r\n");
-						osw.flush();
-						this.responseSent = true;
-					}
 				}
 			}
-			else
+			else if (responseHeader.getField("Content-Length") == null)
 			{
-				System.out.println(String.format("Transaction %s : Socket dj ferm !", Thread.currentThread().getName()));
+				responseHeader.setField("Content-Length", "0");
 			}
 		}
-		catch (IOException e)
+	}
+	
+	// Fabrique le header de la rponse; en cas d'chec, prpare une rponse d'erreur 500
+	private void makeResponseHeader()
+	{
+		HttpResponseHeader responseHeader = this.response.getHeader();
+		
+		try
 		{
-			System.out.println(String.format("Transaction %s : Connexion interrompue.", Thread.currentThread().getName()));
+			this.response.encodeHeader();
+			
+			this.logResponse();
 		}
-		finally
+		catch (BadHeaderException e1) // Pas capable de crer le header de rponse.
 		{
-			synchronized (this.evtProcessor) 
+			try // Essaie de crer une nouvelle rponse avec le code 500 
 			{
-				System.out.print(String.format("Transaction %s : Fin de la transaction. ", Thread.currentThread().getName()));
+				this.keepAlive = false;
+				this.response.reset();
+				responseHeader = this.response.getHeader();
 				
-				if (this.responseSent)
+				if (e1.getMessage() != null)
 				{
-					System.out.println(String.format("La rponse a t envoye au complet.\n", Thread.currentThread().getName()));
+					response.setContent(e1.getMessage().getBytes());
 				}
 				else
 				{
-					System.out.println(String.format("La rponse n'a pas t envoye au complet.\n", Thread.currentThread().getName()));
+					responseHeader.setField("Content-Length", "0");
 				}
+				
+				responseHeader.setStatusCode(500); // Internal Server Error
+				this.response.encodeHeader();
+				
+				this.logResponse();
 			}
-
-			if (!this.socket.isClosed())
+			catch (BadHeaderException e2) // Pas capable..
 			{
-				try { this.socket.close(); } catch (IOException unused) {}
+				System.out.println(String.format("Transaction %s : Erreur 500", this.name));
+				
+				// Prpare une rponse code dur  envoyer directement sur le socket. 
+				this.keepAlive = false;
+				this.rawResponse = ByteBuffer.wrap(RAW_ERROR_RESPONSE);
 			}
-			
-			this.done = true;
 		}
 	}
 	
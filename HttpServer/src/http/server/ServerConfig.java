@@ -0,0 +1,868 @@
+package http.server;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Properties;
+
+/**
+ * La classe ServerConfig regroupe les paramtres de configuration du serveur lus dans le fichier de configuration.
+ * Les paramtres absents ou invalides prennent leur valeur par dfaut.
+ *
+ * @author Christian Lesage
+ * @author Alexandre Tremblay
+ *
+ */
+public class ServerConfig
+{
+	/**
+	 * Mode d'E/S bloquant : un thread par connexion.
+	 */
+	public static final String IO_MODE_BLOCKING = "blocking";
+
+	/**
+	 * Mode d'E/S non bloquant : une boucle d'vnements (Selector) pour toutes les connexions.
+	 */
+	public static final String IO_MODE_NIO = "nio";
+
+	/**
+	 * Mode d'excution bloquant : les connexions sont servies par un pool de threads de plateforme.
+	 */
+	public static final String THREAD_MODE_PLATFORM = "platform";
+
+	/**
+	 * Mode d'excution bloquant : chaque connexion est servie par son propre thread virtuel (Java 21 et plus).
+	 */
+	public static final String THREAD_MODE_VIRTUAL = "virtual";
+
+	/**
+	 * Politique de rejet : rpondre immdiatement 503 (Service Unavailable) quand le pool est satur.
+	 */
+	public static final String REJECT_503 = "reject";
+
+	/**
+	 * Politique de rejet : servir la connexion dans le thread du rpartiteur quand le pool est satur, 
+	 * ce qui suspend l'acceptation de nouvelles connexions. La connexion est alors ferme aprs une seule 
+	 * requte, mme si les connexions persistantes sont permises.
+	 */
+	public static final String REJECT_CALLER_RUNS = "caller_runs";
+
+	/**
+	 * Politique de rejet : fermer la connexion sans rponse quand le pool est satur.
+	 */
+	public static final String REJECT_DISCARD = "discard";
+
+	/**
+	 * tiquettes d'entit faibles, drives de la taille et de la date de modification des fichiers.
+	 */
+	public static final String ETAG_WEAK = "weak";
+
+	/**
+	 * tiquettes d'entit fortes, drives d'une empreinte du contenu des fichiers.
+	 */
+	public static final String ETAG_STRONG = "strong";
+
+	// Chemin absolu du dossier o se trouvent les fichiers ncessaires au serveur
+	private String serverPath = "";
+
+	// Chemin relatif du dossier o se trouvent les fichiers du site Web  servir
+	private String siteFolder = "";
+
+	// Addresse IP utilise pour les connexions entrantes
+	private String ipAddress = "127.0.0.1";
+
+	// Port utilis pour les connexions entrantes
+	private int portNum = 80;
+
+	// Dure d'excution du serveur en secondes; 0 signifie indtermine
+	private int duration = 0;
+
+	// Mode d'E/S (blocking ou nio)
+	private String ioMode = IO_MODE_BLOCKING;
+
+	// Nombre de boucles d'vnements en mode non bloquant; 0 signifie une par processeur
+	private int eventLoops = 0;
+
+	// Nombre max. de connexions en attente d'acceptation dans la file du systme
+	private int backlog = 1024;
+
+	// Dlai d'inactivit en secondes aprs lequel une connexion est ferme
+	private int keepAliveTimeout = 5;
+
+	// Nombre max. de requtes servies sur une mme connexion persistante; 1 dsactive les connexions persistantes
+	private int maxKeepAliveRequests = 100;
+
+	// Type de threads servant les connexions en mode bloquant (platform ou virtual)
+	private String threadMode = THREAD_MODE_PLATFORM;
+
+	// Nombre de threads de travail en mode bloquant
+	private int poolSize = 16;
+
+	// Nombre max. de connexions en attente d'un thread de travail en mode bloquant
+	private int queueDepth = 64;
+
+	// Politique applique quand le pool de threads de travail et sa file sont saturs
+	private String rejectionPolicy = REJECT_503;
+
+	// Dbit max. d'envoi par connexion en Ko/s en mode bloquant; 0 signifie illimit
+	private int maxRate = 0;
+
+	// Budget du cache de contenu en Ko; 0 dsactive le cache
+	private int contentCacheSize = 32768;
+
+	// Taille max. d'un fichier admis dans le cache de contenu en Ko
+	private int contentCacheMaxEntry = 512;
+
+	// Intervalle de revalidation du cache des proprits des fichiers en ms; 0 signifie toujours relire
+	private int metadataCacheInterval = 1000;
+
+	// Indique si le dossier du site est surveill pour invalider les caches ds qu'un fichier change
+	private boolean watchSite = true;
+
+	// Indique si l'entte de chaque requte et de chaque rponse est affich dans le journal
+	private boolean logTransactions = true;
+
+	// Nombre max. de chemins inexistants conservs par le cache ngatif; 0 dsactive le cache ngatif
+	private int negativeCacheSize = 10000;
+
+	// Dlai d'expiration d'un chemin inexistant dans le cache ngatif en ms
+	private int negativeCacheTtl = 10000;
+
+	// Total max. des fichiers projets en mmoire en Ko; 0 dsactive la projection
+	private int mappedCacheSize = 262144;
+
+	// Chemin du fichier du cache partag par les serveurs de la machine; vide dsactive le cache partag
+	private String sharedCacheFile = "";
+
+	// Taille du cache partag en Ko
+	private int sharedCacheSize = 65536;
+
+	// Taille d'une case du cache partag en Ko, qui dtermine la taille max. d'un fichier partag
+	private int sharedCacheSlotSize = 64;
+
+	// Indique si les contenus textuels sont compresss (gzip ou deflate) pour les clients qui l'acceptent
+	private boolean compression = true;
+
+	// Taille min. d'un contenu compress en octets
+	private int compressionMinSize = 1024;
+
+	// Niveau de compression normal, de 1 (rapide)  9 (compact)
+	private int compressionLevel = 6;
+
+	// Type des tiquettes d'entit (weak ou strong)
+	private String etagMode = ETAG_WEAK;
+
+	/**
+	 * Construit une configuration o tous les paramtres ont leur valeur par dfaut.
+	 */
+	public ServerConfig()
+	{
+	}
+
+	/**
+	 * Construit une configuration  partir des proprits lues dans un fichier de configuration.
+	 *
+	 * @param properties proprits lues dans le fichier de configuration
+	 */
+	public ServerConfig(Properties properties)
+	{
+		this.serverPath = properties.getProperty("server_path", this.serverPath);
+		this.siteFolder = properties.getProperty("site_folder", this.siteFolder);
+
+		try
+		{
+			this.ipAddress = InetAddress.getByName(properties.getProperty("host")).getHostAddress();
+		}
+		catch (UnknownHostException e)
+		{
+			this.ipAddress = "127.0.0.1";
+		}
+
+		this.portNum = parseInt(properties, "port_num", 80);
+		this.duration = parseInt(properties, "duration", 0);
+
+		String mode = properties.getProperty("io_mode", IO_MODE_BLOCKING).trim();
+		this.ioMode = mode.equalsIgnoreCase(IO_MODE_NIO) ? IO_MODE_NIO : IO_MODE_BLOCKING;
+
+		this.setEventLoops(parseInt(properties, "event_loops", 0));
+
+		this.setBacklog(parseInt(properties, "backlog", this.backlog));
+		this.setKeepAliveTimeout(parseInt(properties, "keep_alive_timeout", this.keepAliveTimeout));
+		this.setMaxKeepAliveRequests(parseInt(properties, "max_keep_alive_requests", this.maxKeepAliveRequests));
+		this.setThreadMode(properties.getProperty("thread_mode", THREAD_MODE_PLATFORM).trim().toLowerCase());
+		this.setPoolSize(parseInt(properties, "pool_size", this.poolSize));
+		this.setQueueDepth(parseInt(properties, "queue_depth", this.queueDepth));
+		this.setRejectionPolicy(properties.getProperty("rejection_policy", REJECT_503).trim().toLowerCase());
+		this.setMaxRate(parseInt(properties, "max_rate", this.maxRate));
+		this.setContentCacheSize(parseInt(properties, "content_cache_size", this.contentCacheSize));
+		this.setContentCacheMaxEntry(parseInt(properties, "content_cache_max_entry", this.contentCacheMaxEntry));
+		this.setMetadataCacheInterval(parseInt(properties, "metadata_cache_interval", this.metadataCacheInterval));
+		this.setWatchSite(Boolean.parseBoolean(properties.getProperty("watch_site", "true").trim()));
+		this.setLogTransactions(Boolean.parseBoolean(properties.getProperty("log_transactions", "true").trim()));
+		this.setNegativeCacheSize(parseInt(properties, "negative_cache_size", this.negativeCacheSize));
+		this.setNegativeCacheTtl(parseInt(properties, "negative_cache_ttl", this.negativeCacheTtl));
+		this.setMappedCacheSize(parseInt(properties, "mapped_cache_size", this.mappedCacheSize));
+		this.setSharedCacheFile(properties.getProperty("shared_cache_file", this.sharedCacheFile).trim());
+		this.setSharedCacheSize(parseInt(properties, "shared_cache_size", this.sharedCacheSize));
+		this.setSharedCacheSlotSize(parseInt(properties, "shared_cache_slot_size", this.sharedCacheSlotSize));
+		this.setCompression(Boolean.parseBoolean(properties.getProperty("compression", "true").trim()));
+		this.setCompressionMinSize(parseInt(properties, "compression_min_size", this.compressionMinSize));
+		this.setCompressionLevel(parseInt(properties, "compression_level", this.compressionLevel));
+		this.setETagMode(properties.getProperty("etag", ETAG_WEAK).trim().toLowerCase());
+	}
+
+	// Lit un paramtre entier; retourne la valeur par dfaut si le paramtre est absent ou invalide
+	private static int parseInt(Properties properties, String key, int defaultValue)
+	{
+		try
+		{
+			return Integer.parseInt(properties.getProperty(key, "").trim());
+		}
+		catch (NumberFormatException e)
+		{
+			return defaultValue;
+		}
+	}
+
+	/**
+	 * Retourne le chemin absolu du dossier o se trouvent les fichiers ncessaires au serveur.
+	 *
+	 * @return chemin absolu du dossier o se trouvent les fichiers ncessaires au serveur
+	 */
+	public String getServerPath()
+	{
+		return this.serverPath;
+	}
+
+	/**
+	 * Programme le chemin absolu du dossier o se trouvent les fichiers ncessaires au serveur.
+	 *
+	 * @param serverPath chemin absolu du dossier o se trouvent les fichiers ncessaires au serveur
+	 */
+	public void setServerPath(String serverPath)
+	{
+		this.serverPath = serverPath;
+	}
+
+	/**
+	 * Retourne le chemin relatif du dossier o se trouvent les fichiers du site Web  servir.
+	 *
+	 * @return chemin relatif du dossier o se trouvent les fichiers du site Web  servir
+	 */
+	public String getSiteFolder()
+	{
+		return this.siteFolder;
+	}
+
+	/**
+	 * Programme le chemin relatif du dossier o se trouvent les fichiers du site Web  servir.
+	 *
+	 * @param siteFolder chemin relatif du dossier o se trouvent les fichiers du site Web  servir
+	 */
+	public void setSiteFolder(String siteFolder)
+	{
+		this.siteFolder = siteFolder;
+	}
+
+	/**
+	 * Retourne l'adresse IP utilise pour les connexions entrantes.
+	 *
+	 * @return adresse IP utilise pour les connexions entrantes
+	 */
+	public String getIpAddress()
+	{
+		return this.ipAddress;
+	}
+
+	/**
+	 * Programme l'adresse IP utilise pour les connexions entrantes.
+	 *
+	 * @param ipAddress adresse IP utilise pour les connexions entrantes
+	 */
+	public void setIpAddress(String ipAddress)
+	{
+		this.ipAddress = ipAddress;
+	}
+
+	/**
+	 * Retourne le port utilis pour les connexions entrantes.
+	 *
+	 * @return port utilis pour les connexions entrantes
+	 */
+	public int getPortNum()
+	{
+		return this.portNum;
+	}
+
+	/**
+	 * Programme le port utilis pour les connexions entrantes.
+	 *
+	 * @param portNum port utilis pour les connexions entrantes
+	 */
+	public void setPortNum(int portNum)
+	{
+		this.portNum = portNum;
+	}
+
+	/**
+	 * Retourne la dure d'excution du serveur.
+	 *
+	 * @return dure d'excution du serveur en secondes; 0 signifie indtermine
+	 */
+	public int getDuration()
+	{
+		return this.duration;
+	}
+
+	/**
+	 * Programme la dure d'excution du serveur.
+	 *
+	 * @param duration dure d'excution du serveur en secondes; 0 signifie indtermine
+	 */
+	public void setDuration(int duration)
+	{
+		this.duration = Math.max(0, duration);
+	}
+
+	/**
+	 * Retourne le mode d'E/S du serveur.
+	 *
+	 * @return {@link #IO_MODE_BLOCKING} ou {@link #IO_MODE_NIO}
+	 */
+	public String getIoMode()
+	{
+		return this.ioMode;
+	}
+
+	/**
+	 * Programme le mode d'E/S du serveur.
+	 *
+	 * @param ioMode {@link #IO_MODE_BLOCKING} ou {@link #IO_MODE_NIO}
+	 */
+	public void setIoMode(String ioMode)
+	{
+		this.ioMode = IO_MODE_NIO.equals(ioMode) ? IO_MODE_NIO : IO_MODE_BLOCKING;
+	}
+
+	/**
+	 * Indique si le serveur utilise le mode d'E/S non bloquant.
+	 *
+	 * @return vrai si le serveur utilise le mode d'E/S non bloquant, faux sinon
+	 */
+	public boolean isNonBlocking()
+	{
+		return IO_MODE_NIO.equals(this.ioMode);
+	}
+
+	/**
+	 * Retourne le nombre de boucles d'vnements  dmarrer en mode non bloquant.
+	 *
+	 * @return nombre de boucles d'vnements; si aucun nombre n'a t programm, le nombre de processeurs disponibles
+	 */
+	public int getEventLoops()
+	{
+		return (this.eventLoops > 0) ? this.eventLoops : Runtime.getRuntime().availableProcessors();
+	}
+
+	/**
+	 * Programme le nombre de boucles d'vnements  dmarrer en mode non bloquant.
+	 *
+	 * @param eventLoops nombre de boucles d'vnements; 0 signifie une par processeur
+	 */
+	public void setEventLoops(int eventLoops)
+	{
+		this.eventLoops = Math.max(0, eventLoops);
+	}
+
+	/**
+	 * Retourne le nombre max. de connexions en attente d'acceptation dans la file du systme.
+	 *
+	 * @return nombre max. de connexions en attente d'acceptation
+	 */
+	public int getBacklog()
+	{
+		return this.backlog;
+	}
+
+	/**
+	 * Programme le nombre max. de connexions en attente d'acceptation dans la file du systme.
+	 *
+	 * @param backlog nombre max. de connexions en attente d'acceptation (au moins 1)
+	 */
+	public void setBacklog(int backlog)
+	{
+		this.backlog = Math.max(1, backlog);
+	}
+
+	/**
+	 * Retourne le dlai d'inactivit aprs lequel une connexion qui attend une requte est ferme.
+	 *
+	 * @return dlai d'inactivit en secondes; 0 signifie aucun dlai
+	 */
+	public int getKeepAliveTimeout()
+	{
+		return this.keepAliveTimeout;
+	}
+
+	/**
+	 * Programme le dlai d'inactivit aprs lequel une connexion qui attend une requte est ferme.
+	 *
+	 * @param keepAliveTimeout dlai d'inactivit en secondes; 0 signifie aucun dlai
+	 */
+	public void setKeepAliveTimeout(int keepAliveTimeout)
+	{
+		this.keepAliveTimeout = Math.max(0, keepAliveTimeout);
+	}
+
+	/**
+	 * Retourne le nombre max. de requtes servies sur une mme connexion persistante.
+	 *
+	 * @return nombre max. de requtes par connexion; 1 signifie que les connexions ne sont pas persistantes
+	 */
+	public int getMaxKeepAliveRequests()
+	{
+		return this.maxKeepAliveRequests;
+	}
+
+	/**
+	 * Programme le nombre max. de requtes servies sur une mme connexion persistante.
+	 *
+	 * @param maxKeepAliveRequests nombre max. de requtes par connexion; 1 dsactive les connexions persistantes
+	 */
+	public void setMaxKeepAliveRequests(int maxKeepAliveRequests)
+	{
+		this.maxKeepAliveRequests = Math.max(1, maxKeepAliveRequests);
+	}
+
+	/**
+	 * Retourne le type de threads qui servent les connexions en mode bloquant.
+	 *
+	 * @return {@link #THREAD_MODE_PLATFORM} ou {@link #THREAD_MODE_VIRTUAL}
+	 */
+	public String getThreadMode()
+	{
+		return this.threadMode;
+	}
+
+	/**
+	 * Programme le type de threads qui servent les connexions en mode bloquant.
+	 *
+	 * @param threadMode {@link #THREAD_MODE_PLATFORM} ou {@link #THREAD_MODE_VIRTUAL}
+	 */
+	public void setThreadMode(String threadMode)
+	{
+		this.threadMode = THREAD_MODE_VIRTUAL.equals(threadMode) ? THREAD_MODE_VIRTUAL : THREAD_MODE_PLATFORM;
+	}
+
+	/**
+	 * Indique si chaque connexion est servie par son propre thread virtuel en mode bloquant.
+	 *
+	 * @return vrai si les connexions sont servies par des threads virtuels, faux sinon
+	 */
+	public boolean isVirtualThreads()
+	{
+		return THREAD_MODE_VIRTUAL.equals(this.threadMode);
+	}
+
+	/**
+	 * Retourne le nombre de threads de travail qui servent les connexions en mode bloquant.
+	 *
+	 * @return nombre de threads de travail
+	 */
+	public int getPoolSize()
+	{
+		return this.poolSize;
+	}
+
+	/**
+	 * Programme le nombre de threads de travail qui servent les connexions en mode bloquant.
+	 *
+	 * @param poolSize nombre de threads de travail (au moins 1)
+	 */
+	public void setPoolSize(int poolSize)
+	{
+		this.poolSize = Math.max(1, poolSize);
+	}
+
+	/**
+	 * Retourne le nombre max. de connexions en attente d'un thread de travail en mode bloquant.
+	 *
+	 * @return nombre max. de connexions en attente d'un thread de travail
+	 */
+	public int getQueueDepth()
+	{
+		return this.queueDepth;
+	}
+
+	/**
+	 * Programme le nombre max. de connexions en attente d'un thread de travail en mode bloquant.
+	 *
+	 * @param queueDepth nombre max. de connexions en attente d'un thread de travail (au moins 1)
+	 */
+	public void setQueueDepth(int queueDepth)
+	{
+		this.queueDepth = Math.max(1, queueDepth);
+	}
+
+	/**
+	 * Retourne la politique applique quand le pool de threads de travail et sa file sont saturs.
+	 *
+	 * @return {@link #REJECT_503}, {@link #REJECT_CALLER_RUNS} ou {@link #REJECT_DISCARD}
+	 */
+	public String getRejectionPolicy()
+	{
+		return this.rejectionPolicy;
+	}
+
+	/**
+	 * Programme la politique applique quand le pool de threads de travail et sa file sont saturs.
+	 *
+	 * @param rejectionPolicy {@link #REJECT_503}, {@link #REJECT_CALLER_RUNS} ou {@link #REJECT_DISCARD}
+	 */
+	public void setRejectionPolicy(String rejectionPolicy)
+	{
+		if (REJECT_CALLER_RUNS.equals(rejectionPolicy) || REJECT_DISCARD.equals(rejectionPolicy))
+		{
+			this.rejectionPolicy = rejectionPolicy;
+		}
+		else
+		{
+			this.rejectionPolicy = REJECT_503;
+		}
+	}
+
+	/**
+	 * Retourne le dbit max. d'envoi par connexion en mode bloquant. Quand le dbit n'est pas limit, 
+	 * les fichiers sont envoys sans copie (voir {@link java.nio.channels.FileChannel#transferTo}).
+	 *
+	 * @return dbit max. en Ko/s; 0 signifie illimit
+	 */
+	public int getMaxRate()
+	{
+		return this.maxRate;
+	}
+
+	/**
+	 * Programme le dbit max. d'envoi par connexion en mode bloquant.
+	 *
+	 * @param maxRate dbit max. en Ko/s; 0 signifie illimit
+	 */
+	public void setMaxRate(int maxRate)
+	{
+		this.maxRate = Math.max(0, maxRate);
+	}
+
+	/**
+	 * Retourne le budget du cache de contenu.
+	 *
+	 * @return budget du cache en Ko; 0 signifie que le cache est dsactiv
+	 */
+	public int getContentCacheSize()
+	{
+		return this.contentCacheSize;
+	}
+
+	/**
+	 * Programme le budget du cache de contenu.
+	 *
+	 * @param contentCacheSize budget du cache en Ko; 0 dsactive le cache
+	 */
+	public void setContentCacheSize(int contentCacheSize)
+	{
+		this.contentCacheSize = Math.max(0, contentCacheSize);
+	}
+
+	/**
+	 * Retourne la taille max. d'un fichier admis dans le cache de contenu.
+	 *
+	 * @return taille max. en Ko
+	 */
+	public int getContentCacheMaxEntry()
+	{
+		return this.contentCacheMaxEntry;
+	}
+
+	/**
+	 * Programme la taille max. d'un fichier admis dans le cache de contenu.
+	 *
+	 * @param contentCacheMaxEntry taille max. en Ko (au moins 1)
+	 */
+	public void setContentCacheMaxEntry(int contentCacheMaxEntry)
+	{
+		this.contentCacheMaxEntry = Math.max(1, contentCacheMaxEntry);
+	}
+
+	/**
+	 * Retourne l'intervalle de revalidation du cache des proprits des fichiers.
+	 *
+	 * @return intervalle en ms; 0 signifie que les proprits sont toujours relues
+	 */
+	public int getMetadataCacheInterval()
+	{
+		return this.metadataCacheInterval;
+	}
+
+	/**
+	 * Programme l'intervalle de revalidation du cache des proprits des fichiers.
+	 *
+	 * @param metadataCacheInterval intervalle en ms; 0 pour toujours relire les proprits
+	 */
+	public void setMetadataCacheInterval(int metadataCacheInterval)
+	{
+		this.metadataCacheInterval = Math.max(0, metadataCacheInterval);
+	}
+
+	/**
+	 * Indique si le dossier du site est surveill pour invalider les caches ds qu'un fichier change.
+	 *
+	 * @return vrai si le dossier du site est surveill, faux si les caches sont revalids priodiquement
+	 */
+	public boolean isWatchSite()
+	{
+		return this.watchSite;
+	}
+
+	/**
+	 * Dtermine si le dossier du site est surveill pour invalider les caches ds qu'un fichier change.
+	 *
+	 * @param watchSite vrai pour surveiller le dossier du site, faux pour revalider les caches priodiquement
+	 */
+	public void setWatchSite(boolean watchSite)
+	{
+		this.watchSite = watchSite;
+	}
+
+	/**
+	 * Indique si l'entte de chaque requte et de chaque rponse est affich dans le journal.
+	 *
+	 * @return vrai si les transactions sont journalises, faux sinon
+	 */
+	public boolean isLogTransactions()
+	{
+		return this.logTransactions;
+	}
+
+	/**
+	 * Dtermine si l'entte de chaque requte et de chaque rponse est affich dans le journal. Sans journal, 
+	 * aucun texte n'est fabriqu pour une transaction qui se droule normalement.
+	 *
+	 * @param logTransactions vrai pour journaliser les transactions, faux sinon
+	 */
+	public void setLogTransactions(boolean logTransactions)
+	{
+		this.logTransactions = logTransactions;
+	}
+
+	/**
+	 * Retourne le nombre max. de chemins inexistants conservs par le cache ngatif.
+	 *
+	 * @return nombre max. de chemins inexistants; 0 signifie que le cache ngatif est dsactiv
+	 */
+	public int getNegativeCacheSize()
+	{
+		return this.negativeCacheSize;
+	}
+
+	/**
+	 * Programme le nombre max. de chemins inexistants conservs par le cache ngatif.
+	 *
+	 * @param negativeCacheSize nombre max. de chemins inexistants; 0 dsactive le cache ngatif
+	 */
+	public void setNegativeCacheSize(int negativeCacheSize)
+	{
+		this.negativeCacheSize = Math.max(0, negativeCacheSize);
+	}
+
+	/**
+	 * Retourne le dlai d'expiration d'un chemin inexistant dans le cache ngatif.
+	 *
+	 * @return dlai en ms
+	 */
+	public int getNegativeCacheTtl()
+	{
+		return this.negativeCacheTtl;
+	}
+
+	/**
+	 * Programme le dlai d'expiration d'un chemin inexistant dans le cache ngatif.
+	 *
+	 * @param negativeCacheTtl dlai en ms; 0 dsactive le cache ngatif
+	 */
+	public void setNegativeCacheTtl(int negativeCacheTtl)
+	{
+		this.negativeCacheTtl = Math.max(0, negativeCacheTtl);
+	}
+
+	/**
+	 * Retourne le total max. des fichiers projets en mmoire pour servir les fichiers trop gros pour le cache de contenu.
+	 *
+	 * @return total max. en Ko; 0 signifie que la projection est dsactive
+	 */
+	public int getMappedCacheSize()
+	{
+		return this.mappedCacheSize;
+	}
+
+	/**
+	 * Programme le total max. des fichiers projets en mmoire pour servir les fichiers trop gros pour le cache de contenu.
+	 *
+	 * @param mappedCacheSize total max. en Ko; 0 dsactive la projection
+	 */
+	public void setMappedCacheSize(int mappedCacheSize)
+	{
+		this.mappedCacheSize = Math.max(0, mappedCacheSize);
+	}
+
+	/**
+	 * Retourne le chemin du fichier du cache partag par tous les serveurs de la machine.
+	 *
+	 * @return chemin du fichier; vide si le cache partag est dsactiv
+	 */
+	public String getSharedCacheFile()
+	{
+		return this.sharedCacheFile;
+	}
+
+	/**
+	 * Programme le chemin du fichier du cache partag par tous les serveurs de la machine.
+	 * Tous les serveurs qui utilisent le mme fichier doivent avoir la mme taille de cache et de case.
+	 *
+	 * @param sharedCacheFile chemin du fichier; vide ou null dsactive le cache partag
+	 */
+	public void setSharedCacheFile(String sharedCacheFile)
+	{
+		this.sharedCacheFile = (sharedCacheFile != null) ? sharedCacheFile : "";
+	}
+
+	/**
+	 * Retourne la taille du cache partag.
+	 *
+	 * @return taille en Ko
+	 */
+	public int getSharedCacheSize()
+	{
+		return this.sharedCacheSize;
+	}
+
+	/**
+	 * Programme la taille du cache partag.
+	 *
+	 * @param sharedCacheSize taille en Ko
+	 */
+	public void setSharedCacheSize(int sharedCacheSize)
+	{
+		this.sharedCacheSize = Math.max(0, sharedCacheSize);
+	}
+
+	/**
+	 * Retourne la taille d'une case du cache partag, qui dtermine la taille max. d'un fichier partag.
+	 *
+	 * @return taille d'une case en Ko
+	 */
+	public int getSharedCacheSlotSize()
+	{
+		return this.sharedCacheSlotSize;
+	}
+
+	/**
+	 * Programme la taille d'une case du cache partag, qui dtermine la taille max. d'un fichier partag.
+	 *
+	 * @param sharedCacheSlotSize taille d'une case en Ko
+	 */
+	public void setSharedCacheSlotSize(int sharedCacheSlotSize)
+	{
+		this.sharedCacheSlotSize = Math.max(1, sharedCacheSlotSize);
+	}
+
+	/**
+	 * Indique si les contenus textuels sont compresss pour les clients qui l'acceptent. Les versions compresses
+	 *  la vole sont conserves dans le cache de contenu et exigent donc que ce cache soit activ; les versions
+	 * prcompresses (fichiers  .gz  crits par PrecompressApp) sont servies dans tous les cas.
+	 *
+	 * @return vrai si les contenus textuels sont compresss
+	 */
+	public boolean isCompression()
+	{
+		return this.compression;
+	}
+
+	/**
+	 * Dtermine si les contenus textuels sont compresss pour les clients qui l'acceptent.
+	 *
+	 * @param compression vrai pour compresser les contenus textuels
+	 */
+	public void setCompression(boolean compression)
+	{
+		this.compression = compression;
+	}
+
+	/**
+	 * Retourne la taille min. d'un contenu compress.
+	 *
+	 * @return taille min. en octets
+	 */
+	public int getCompressionMinSize()
+	{
+		return this.compressionMinSize;
+	}
+
+	/**
+	 * Programme la taille min. d'un contenu compress.
+	 *
+	 * @param compressionMinSize taille min. en octets
+	 */
+	public void setCompressionMinSize(int compressionMinSize)
+	{
+		this.compressionMinSize = Math.max(0, compressionMinSize);
+	}
+
+	/**
+	 * Retourne le niveau de compression normal, abaiss automatiquement quand le processeur est satur.
+	 *
+	 * @return niveau de compression, de 1 (rapide)  9 (compact)
+	 */
+	public int getCompressionLevel()
+	{
+		return this.compressionLevel;
+	}
+
+	/**
+	 * Programme le niveau de compression normal, abaiss automatiquement quand le processeur est satur.
+	 *
+	 * @param compressionLevel niveau de compression, de 1 (rapide)  9 (compact)
+	 */
+	public void setCompressionLevel(int compressionLevel)
+	{
+		this.compressionLevel = Math.max(1, Math.min(9, compressionLevel));
+	}
+
+	/**
+	 * Retourne le type des tiquettes d'entit (champ ETag) des fichiers servis.
+	 *
+	 * @return {@link #ETAG_WEAK} ou {@link #ETAG_STRONG}
+	 */
+	public String getETagMode()
+	{
+		return this.etagMode;
+	}
+
+	/**
+	 * Programme le type des tiquettes d'entit des fichiers servis. Les tiquettes fortes permettent les requtes 
+	 * If-Range par tiquette, mais exigent de lire chaque fichier une fois pour en calculer l'empreinte.
+	 *
+	 * @param etagMode {@link #ETAG_WEAK} ou {@link #ETAG_STRONG}
+	 */
+	public void setETagMode(String etagMode)
+	{
+		this.etagMode = ETAG_STRONG.equals(etagMode) ? ETAG_STRONG : ETAG_WEAK;
+	}
+
+	/**
+	 * Indique si les tiquettes d'entit sont fortes.
+	 *
+	 * @return vrai si les tiquettes sont drives du contenu, faux si elles sont faibles
+	 */
+	public boolean isStrongETags()
+	{
+		return ETAG_STRONG.equals(this.etagMode);
+	}
+}
@@ -0,0 +1,388 @@
+package http.server.cache;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * La classe ContentCache modlise un cache en mmoire du contenu des fichiers du site Web. Le cache a un budget
+ * total en octets et n'accepte que les fichiers dont la taille ne dpasse pas une limite par lment.
+ * <p>
+ * Les lments sont vincs du moins rcemment utilis au plus rcemment utilis (LRU), mais un nouvel lment
+ * n'est admis que s'il a t demand plus souvent que chacun des lments qu'il remplacerait (TinyLFU, voir
+ * {@link FrequencySketch}). Ainsi, un parcours complet du site par un robot ne chasse pas les fichiers populaires.
+ * <p>
+ * Un lment n'est servi que si la date de modification et la taille du fichier n'ont pas chang depuis sa lecture.
+ * Les versions compresses d'un fichier (voir {@link ContentEncoder}) sont des lments distincts, conservs
+ *  ct de la version d'origine et invalids avec elle.
+ * Le cache peut tre utilis par plusieurs threads  la fois; les fichiers sont lus hors du verrou, et un fichier
+ * demand par plusieurs threads  la fois n'est lu qu'une fois (voir {@link FileLoader}).
+ *
+ * @author Christian Lesage
+ * @author Alexandre Tremblay
+ */
+public class ContentCache
+{
+	// Taille moyenne prsume d'un lment, servant  dimensionner l'estimateur de frquence
+	private static final int AVERAGE_ENTRY_SIZE = 4096;
+
+	// Sparateur du chemin et du codage dans la cl d'une version compresse
+	private static final char ENCODING_SEP = '\0';
+
+	// lment du cache
+	private static class Entry
+	{
+		// Contenu du fichier, compress ou non
+		final byte[] data;
+
+		// Date de modification du fichier au moment de sa lecture
+		final long lastModified;
+
+		// Taille du fichier au moment de sa lecture
+		final long length;
+
+		Entry(byte[] data, long lastModified, long length)
+		{
+			this.data = data;
+			this.lastModified = lastModified;
+			this.length = length;
+		}
+	}
+
+	// Budget total en octets
+	private final long maxSize;
+
+	// Taille max. d'un lment en octets
+	private final long maxEntrySize;
+
+	// lments, du moins rcemment utilis au plus rcemment utilis
+	private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+
+	// Estimateur de la frquence d'accs aux fichiers, servant au filtre d'admission
+	private final FrequencySketch sketch;
+
+	// Lecteur des fichiers absents du cache, qui regroupe les lectures simultanes d'un mme fichier
+	private final FileLoader loader = new FileLoader();
+
+	// Taille totale des lments en octets
+	private long size = 0;
+
+	// Compteurs de statistiques
+	private long hits = 0;
+	private long misses = 0;
+	private long evictions = 0;
+	private long rejections = 0;
+
+	/**
+	 * Construit un cache de contenu.
+	 *
+	 * @param maxSize budget total en octets
+	 * @param maxEntrySize taille max. d'un lment en octets
+	 */
+	public ContentCache(long maxSize, long maxEntrySize)
+	{
+		this.maxSize = maxSize;
+		this.maxEntrySize = Math.min(maxEntrySize, maxSize);
+		this.sketch = new FrequencySketch((int) Math.min(Integer.MAX_VALUE, maxSize / AVERAGE_ENTRY_SIZE));
+	}
+
+	/**
+	 * Retourne le contenu du fichier spcifi,  partir du cache s'il y est encore valide, sinon en lisant
+	 * le fichier et en tentant de l'admettre dans le cache.
+	 *
+	 * @param path chemin absolu du fichier
+	 * @param lastModified date de modification actuelle du fichier
+	 * @param length taille actuelle du fichier
+	 * @return contenu du fichier, ou null si le fichier est trop gros pour le cache
+	 * @throws IOException si le fichier ne peut pas tre lu
+	 */
+	public byte[] get(String path, long lastModified, long length) throws IOException
+	{
+		if (length > this.maxEntrySize)
+		{
+			return null;
+		}
+
+		synchronized (this)
+		{
+			this.sketch.increment(path);
+
+			Entry entry = this.entries.get(path);
+
+			if (entry != null)
+			{
+				if (entry.lastModified == lastModified && entry.length == length)
+				{
+					this.hits++;
+					return entry.data;
+				}
+
+				// Fichier modifi depuis sa lecture
+				this.remove(path);
+			}
+
+			this.misses++;
+		}
+
+		byte[] data = this.loader.load(path, lastModified, length);
+
+		// Le fichier n'est admis que s'il n'a pas chang de taille pendant sa lecture
+		if (data.length == length)
+		{
+			this.admit(path, new Entry(data, lastModified, length));
+		}
+
+		return data;
+	}
+
+	/**
+	 * Retourne la version compresse du fichier spcifi,  partir du cache si elle y est encore valide,
+	 * sinon en compressant le contenu fourni et en tentant de l'admettre dans le cache.
+	 *
+	 * @param path chemin absolu du fichier
+	 * @param lastModified date de modification actuelle du fichier
+	 * @param data contenu actuel du fichier
+	 * @param encoding codage de contenu ({@link ContentEncoder#GZIP} ou {@link ContentEncoder#DEFLATE})
+	 * @param encoder codeur servant  compresser le contenu
+	 * @return contenu compress
+	 */
+	public byte[] getEncoded(String path, long lastModified, byte[] data, String encoding, ContentEncoder encoder)
+	{
+		String key = path + ENCODING_SEP + encoding;
+
+		synchronized (this)
+		{
+			this.sketch.increment(key);
+
+			Entry entry = this.entries.get(key);
+
+			if (entry != null)
+			{
+				if (entry.lastModified == lastModified && entry.length == data.length)
+				{
+					this.hits++;
+					return entry.data;
+				}
+
+				this.remove(key);
+			}
+
+			this.misses++;
+		}
+
+		// Une version compresse  un niveau rduit pendant une priode de charge reste en cache telle quelle
+		byte[] encoded = encoder.encode(data, encoding);
+
+		this.admit(key, new Entry(encoded, lastModified, data.length));
+
+		return encoded;
+	}
+
+	/**
+	 * Retire du cache le fichier spcifi.
+	 *
+	 * @param path chemin absolu du fichier
+	 */
+	public synchronized void invalidate(String path)
+	{
+		this.remove(path);
+		this.remove(path + ENCODING_SEP + ContentEncoder.GZIP);
+		this.remove(path + ENCODING_SEP + ContentEncoder.DEFLATE);
+	}
+
+	/**
+	 * Retire du cache le fichier ou le dossier spcifi et tout ce qu'il contient.
+	 *
+	 * @param path chemin absolu du fichier ou du dossier
+	 */
+	public synchronized void invalidateTree(String path)
+	{
+		String prefix = path + File.separator;
+		String variantPrefix = path + ENCODING_SEP;
+
+		for (Iterator<Map.Entry<String, Entry>> iter = this.entries.entrySet().iterator(); iter.hasNext(); )
+		{
+			Map.Entry<String, Entry> e = iter.next();
+
+			if (e.getKey().equals(path) || e.getKey().startsWith(prefix) || e.getKey().startsWith(variantPrefix))
+			{
+				this.size -= e.getValue().data.length;
+				iter.remove();
+			}
+		}
+	}
+
+	/**
+	 * Vide le cache.
+	 */
+	public synchronized void clear()
+	{
+		this.entries.clear();
+		this.size = 0;
+	}
+
+	// Ajoute un lment au cache si le filtre d'admission le permet, en vinant au besoin les lments
+	// les moins rcemment utiliss
+	private synchronized void admit(String path, Entry entry)
+	{
+		// Dj lu par un autre thread
+		if (this.entries.containsKey(path))
+		{
+			return;
+		}
+
+		long needed = this.size + entry.data.length - this.maxSize;
+
+		if (needed > 0)
+		{
+			int frequency = this.sketch.frequency(path);
+			List<String> victims = new ArrayList<String>();
+			long freed = 0;
+
+			for (Map.Entry<String, Entry> e : this.entries.entrySet())
+			{
+				if (freed >= needed)
+				{
+					break;
+				}
+
+				// Un lment au moins aussi populaire que le nouveau est conserv; le nouveau n'est pas admis
+				if (this.sketch.frequency(e.getKey()) >= frequency)
+				{
+					this.rejections++;
+					return;
+				}
+
+				victims.add(e.getKey());
+				freed += e.getValue().data.length;
+			}
+
+			for (String victim : victims)
+			{
+				this.remove(victim);
+				this.evictions++;
+			}
+		}
+
+		this.entries.put(path, entry);
+		this.size += entry.data.length;
+	}
+
+	// Retire un lment du cache
+	private void remove(String path)
+	{
+		Entry entry = this.entries.remove(path);
+
+		if (entry != null)
+		{
+			this.size -= entry.data.length;
+		}
+	}
+
+	// Lit au plus le nombre d'octets spcifi du fichier
+	static byte[] readFile(String path, long length) throws IOException
+	{
+		byte[] data = new byte[(int) length];
+		int total = 0;
+		FileInputStream fis = new FileInputStream(new File(path));
+
+		try
+		{
+			int len;
+
+			while (total < data.length && (len = fis.read(data, total, data.length - total)) > 0)
+			{
+				total += len;
+			}
+		}
+		finally
+		{
+			try { fis.close(); } catch (IOException unused) {}
+		}
+
+		if (total < data.length)
+		{
+			byte[] truncated = new byte[total];
+			System.arraycopy(data, 0, truncated, 0, total);
+			return truncated;
+		}
+
+		return data;
+	}
+
+	/**
+	 * Retourne le nombre de demandes servies  partir du cache.
+	 *
+	 * @return nombre de succs
+	 */
+	public synchronized long getHits()
+	{
+		return this.hits;
+	}
+
+	/**
+	 * Retourne le nombre de demandes pour lesquelles le fichier a d tre lu.
+	 *
+	 * @return nombre d'checs
+	 */
+	public synchronized long getMisses()
+	{
+		return this.misses;
+	}
+
+	/**
+	 * Retourne le nombre d'lments vincs pour faire place  de nouveaux.
+	 *
+	 * @return nombre d'victions
+	 */
+	public synchronized long getEvictions()
+	{
+		return this.evictions;
+	}
+
+	/**
+	 * Retourne le nombre de fichiers lus qui n'ont pas t admis parce que moins populaires que les lments
+	 * qu'ils auraient remplacs.
+	 *
+	 * @return nombre de refus d'admission
+	 */
+	public synchronized long getRejections()
+	{
+		return this.rejections;
+	}
+
+	/**
+	 * Retourne le nombre d'lments dans le cache.
+	 *
+	 * @return nombre d'lments
+	 */
+	public synchronized int getEntryCount()
+	{
+		return this.entries.size();
+	}
+
+	/**
+	 * Retourne la taille totale des lments du cache.
+	 *
+	 * @return taille totale en octets
+	 */
+	public synchronized long getSize()
+	{
+		return this.size;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public synchronized String toString()
+	{
+		return String.format("Cache de contenu : %d lments, %d / %d octets, %d succs, %d checs, %d lectures regroupes, %d victions, %d refus d'admission",
+				this.entries.size(), this.size, this.maxSize, this.hits, this.misses, this.loader.getCoalesced(), this.evictions, this.rejections);
+	}
+}
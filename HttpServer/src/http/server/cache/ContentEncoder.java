@@ -0,0 +1,183 @@
+package http.server.cache;
+
+import http.common.HttpRequestHeader;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * La classe ContentEncoder choisit et applique le codage de contenu (gzip ou deflate) des rponses. Seuls les types
+ * MIME textuels (HTML, CSS, JavaScript, XML, JSON, texte) d'une taille minimale sont compresss; les images, archives
+ * et autres formats dj compresss ne gagneraient rien.
+ * <p>
+ * Le niveau de compression est abaiss au minimum tant que la charge moyenne du systme dpasse le nombre
+ * de processeurs, pour que la compression n'aggrave pas une saturation du processeur.
+ *
+ * @author Christian Lesage
+ * @author Alexandre Tremblay
+ */
+public class ContentEncoder
+{
+	/**
+	 * Codage gzip (RFC 1952)
+	 */
+	public static final String GZIP = "gzip";
+
+	/**
+	 * Codage deflate (format zlib, RFC 1950)
+	 */
+	public static final String DEFLATE = "deflate";
+
+	// Intervalle de vrification de la charge du systme en ms
+	private static final long LOAD_CHECK_INTERVAL = 1000;
+
+	// Taille min. d'un contenu compress en octets
+	private final int minSize;
+
+	// Niveau de compression normal (1  9)
+	private final int level;
+
+	// Informations sur la charge du systme
+	private final OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+
+	// Niveau de compression courant, selon la charge du systme
+	private volatile int currentLevel;
+
+	// Moment de la dernire vrification de la charge du systme
+	private volatile long lastLoadCheck = 0;
+
+	/**
+	 * Construit un codeur de contenu.
+	 *
+	 * @param minSize taille min. d'un contenu compress en octets
+	 * @param level niveau de compression normal, de 1 (rapide)  9 (compact)
+	 */
+	public ContentEncoder(int minSize, int level)
+	{
+		this.minSize = minSize;
+		this.level = Math.max(Deflater.BEST_SPEED, Math.min(Deflater.BEST_COMPRESSION, level));
+		this.currentLevel = this.level;
+	}
+
+	/**
+	 * Indique si un contenu du type et de la taille spcifis peut tre compress.
+	 *
+	 * @param mimeType type MIME du contenu, ou null s'il est inconnu
+	 * @param length taille du contenu en octets
+	 * @return vrai si le contenu peut tre compress
+	 */
+	public boolean isCompressible(String mimeType, long length)
+	{
+		if (mimeType == null || length < this.minSize)
+		{
+			return false;
+		}
+
+		return mimeType.startsWith("text/")
+				|| mimeType.endsWith("/xml") || mimeType.endsWith("+xml")
+				|| mimeType.endsWith("/json") || mimeType.endsWith("+json")
+				|| mimeType.endsWith("javascript");
+	}
+
+	/**
+	 * Choisit le codage prfr par le client parmi ceux qui sont offerts, d'aprs le champ Accept-Encoding
+	 * de sa requte.  prfrence gale, gzip est choisi.
+	 *
+	 * @param requestHeader entte de la requte
+	 * @return codage choisi, ou null si le client n'accepte ni gzip ni deflate
+	 */
+	public String chooseEncoding(HttpRequestHeader requestHeader)
+	{
+		float gzip = requestHeader.getEncodingQuality(GZIP);
+		float deflate = requestHeader.getEncodingQuality(DEFLATE);
+
+		if (gzip <= 0 && deflate <= 0)
+		{
+			return null;
+		}
+
+		return gzip >= deflate ? GZIP : DEFLATE;
+	}
+
+	/**
+	 * Compresse un contenu avec le codage spcifi, au niveau permis par la charge courante du systme.
+	 *
+	 * @param data contenu  compresser
+	 * @param encoding codage ({@link #GZIP} ou {@link #DEFLATE})
+	 * @return contenu compress
+	 */
+	public byte[] encode(byte[] data, String encoding)
+	{
+		final int level = this.getLevel();
+		ByteArrayOutputStream bos = new ByteArrayOutputStream(data.length / 3 + 64);
+
+		try
+		{
+			DeflaterOutputStream dos;
+
+			if (encoding.equals(GZIP))
+			{
+				// GZIPOutputStream ne permet pas de choisir le niveau; on rgle son propre compresseur
+				dos = new GZIPOutputStream(bos, 8192)
+				{
+					{
+						this.def.setLevel(level);
+					}
+				};
+			}
+			else
+			{
+				// Le compresseur fourni n'est pas libr par la stream
+				dos = new DeflaterOutputStream(bos, new Deflater(level), 8192)
+				{
+					@Override
+					public void close() throws IOException
+					{
+						super.close();
+						this.def.end();
+					}
+				};
+			}
+
+			dos.write(data);
+			dos.close();
+		}
+		catch (IOException e) // Impossible en mmoire
+		{
+			throw new IllegalStateException(e);
+		}
+
+		return bos.toByteArray();
+	}
+
+	// Retourne le niveau de compression, abaiss au minimum quand le processeur est satur
+	private int getLevel()
+	{
+		long now = System.currentTimeMillis();
+
+		if (now - this.lastLoadCheck >= LOAD_CHECK_INTERVAL)
+		{
+			this.lastLoadCheck = now;
+
+			// Charge moyenne indisponible (ngative) sur certains systmes : niveau normal
+			double load = this.os.getSystemLoadAverage();
+			this.currentLevel = (load > this.os.getAvailableProcessors()) ? Deflater.BEST_SPEED : this.level;
+		}
+
+		return this.currentLevel;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString()
+	{
+		return String.format("Compression : taille min. %d octets, niveau %d (normal %d)", this.minSize, this.currentLevel, this.level);
+	}
+}
@@ -0,0 +1,64 @@
+package http.server.cache;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * La classe ErrorPageCache conserve en mmoire le contenu des pages d'erreur (p. ex. error_404.htm) pour que 
+ * les rponses d'erreur soient servies sans lire le disque. Une page est relue ds que la date de modification 
+ * ou la taille de son fichier change.
+ * <p>
+ * Le cache peut tre utilis par plusieurs threads  la fois.
+ *
+ * @author Christian Lesage
+ * @author Alexandre Tremblay
+ */
+public class ErrorPageCache
+{
+	// Taille max. d'une page d'erreur conserve en mmoire en octets
+	private static final long MAX_PAGE_SIZE = 1024 * 1024;
+	
+	// Page d'erreur
+	private static class Page
+	{
+		// Contenu du fichier
+		final byte[] data;
+		
+		// Date de modification du fichier au moment de sa lecture
+		final long lastModified;
+		
+		Page(byte[] data, long lastModified)
+		{
+			this.data = data;
+			this.lastModified = lastModified;
+		}
+	}
+	
+	// Pages, par chemin de fichier
+	private final ConcurrentHashMap<String, Page> pages = new ConcurrentHashMap<String, Page>();
+	
+	/**
+	 * Retourne le contenu de la page d'erreur spcifie, lu au besoin.
+	 * 
+	 * @param file proprits du fichier de la page d'erreur
+	 * @return contenu de la page, ou null si le fichier est trop gros pour tre conserv en mmoire
+	 * @throws IOException si le fichier ne peut pas tre lu
+	 */
+	public byte[] get(FileMetadata file) throws IOException
+	{
+		if (file.getLength() > MAX_PAGE_SIZE)
+		{
+			return null;
+		}
+		
+		Page page = this.pages.get(file.getPath());
+		
+		if (page == null || page.lastModified != file.getLastModified() || page.data.length != file.getLength())
+		{
+			page = new Page(ContentCache.readFile(file.getPath(), file.getLength()), file.getLastModified());
+			this.pages.put(file.getPath(), page);
+		}
+		
+		return page.data;
+	}
+}
@@ -0,0 +1,113 @@
+package http.server.cache;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * La classe FileLoader lit le contenu des fichiers pour les caches en regroupant les lectures simultanes
+ * d'une mme version d'un fichier : le premier thread qui la demande la lit, et les autres attendent
+ * le rsultat de sa lecture plutt que de relire le fichier. Aprs un redmarrage ou l'viction d'un
+ * fichier populaire, le disque ne reoit ainsi qu'une lecture par fichier au lieu d'une par requte.
+ *
+ * @author Christian Lesage
+ * @author Alexandre Tremblay
+ */
+class FileLoader
+{
+	// Lectures en cours, par fichier et version
+	private final ConcurrentMap<String, FutureTask<byte[]>> loads = new ConcurrentHashMap<String, FutureTask<byte[]>>();
+
+	// Nombre de demandes servies par la lecture d'un autre thread
+	private final AtomicLong coalesced = new AtomicLong();
+
+	/**
+	 * Lit au plus le nombre d'octets spcifi du fichier, ou attend la fin de la lecture dj en cours
+	 * de la mme version du fichier.
+	 *
+	 * @param path chemin absolu du fichier
+	 * @param lastModified date de modification actuelle du fichier
+	 * @param length taille actuelle du fichier
+	 * @return contenu du fichier, plus court que la taille spcifie si le fichier a raccourci
+	 * @throws IOException si le fichier ne peut pas tre lu
+	 */
+	byte[] load(final String path, long lastModified, final long length) throws IOException
+	{
+		// Un fichier modifi pendant une lecture en cours n'attend pas l'ancienne version
+		String key = path + '\0' + lastModified + '\0' + length;
+
+		FutureTask<byte[]> task = new FutureTask<byte[]>(new Callable<byte[]>()
+		{
+			public byte[] call() throws IOException
+			{
+				return ContentCache.readFile(path, length);
+			}
+		});
+
+		FutureTask<byte[]> current = this.loads.putIfAbsent(key, task);
+
+		if (current == null)
+		{
+			current = task;
+
+			try
+			{
+				task.run();
+			}
+			finally
+			{
+				this.loads.remove(key, task);
+			}
+		}
+		else
+		{
+			this.coalesced.incrementAndGet();
+		}
+
+		try
+		{
+			return current.get();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("lecture de " + path + " interrompue");
+		}
+		catch (ExecutionException e)
+		{
+			Throwable cause = e.getCause();
+
+			if (cause instanceof IOException)
+			{
+				throw (IOException) cause;
+			}
+
+			if (cause instanceof RuntimeException)
+			{
+				throw (RuntimeException) cause;
+			}
+
+			if (cause instanceof Error)
+			{
+				throw (Error) cause;
+			}
+
+			throw new IOException(cause);
+		}
+	}
+
+	/**
+	 * Retourne le nombre de demandes servies par la lecture d'un autre thread.
+	 *
+	 * @return nombre de lectures vites
+	 */
+	long getCoalesced()
+	{
+		return this.coalesced.get();
+	}
+}
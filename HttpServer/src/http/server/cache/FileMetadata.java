@@ -0,0 +1,220 @@
+package http.server.cache;
+
+import java.io.File;
+
+import util.DateUtil;
+
+/**
+ * La classe FileMetadata regroupe les proprits d'un fichier dont le serveur a besoin pour rpondre  une requte. 
+ * Les proprits sont lues une seule fois,  la construction; une instance n'est jamais modifie par la suite et 
+ * peut donc tre partage entre threads. Seule l'tiquette forte, qui dpend du contenu, est calcule plus tard 
+ * par {@link FileMetadataCache#getETag(FileMetadata)}.
+ *
+ * @author Christian Lesage
+ * @author Alexandre Tremblay
+ */
+public class FileMetadata
+{
+	// Chemin absolu du fichier
+	private final String path;
+	
+	// Indique si le fichier existe
+	private final boolean exists;
+	
+	// Indique s'il s'agit d'un dossier
+	private final boolean directory;
+	
+	// Indique si le fichier peut tre lu
+	private final boolean readable;
+	
+	// Taille du fichier en octets
+	private final long length;
+	
+	// Taille formate pour le champ Content-Length
+	private final String lengthText;
+	
+	// Date de modification du fichier en ms
+	private final long lastModified;
+	
+	// Date de modification formate pour le champ Last-Modified (null si le fichier n'existe pas)
+	private final String lastModifiedText;
+	
+	// tiquette faible drive de la taille et de la date de modification (null si le fichier n'existe pas)
+	private final String weakETag;
+	
+	// tiquette forte drive du contenu, calcule au besoin par le cache des proprits (null tant qu'elle ne l'est pas)
+	private volatile String strongETag;
+	
+	// Type MIME correspondant  l'extension du fichier (null si inconnu)
+	private final String mimeType;
+	
+	// Moment de la lecture des proprits en ms
+	private final long checkTime;
+	
+	/**
+	 * Lit les proprits du fichier spcifi.
+	 * 
+	 * @param file fichier dont les proprits doivent tre lues
+	 * @param mimeType type MIME correspondant  l'extension du fichier, ou null s'il est inconnu
+	 * @param checkTime moment de la lecture en ms
+	 */
+	public FileMetadata(File file, String mimeType, long checkTime)
+	{
+		this.path = file.getAbsolutePath();
+		this.lastModified = file.lastModified();
+		
+		// Une date de modification nulle indique le plus souvent que le fichier n'existe pas
+		this.exists = this.lastModified != 0 || file.exists();
+		this.directory = this.exists && file.isDirectory();
+		this.readable = this.exists && file.canRead();
+		this.length = this.exists ? file.length() : 0;
+		this.lengthText = Long.toString(this.length);
+		this.lastModifiedText = this.exists ? DateUtil.formatDate(this.lastModified) : null;
+		this.weakETag = this.exists ? "W/\"" + Long.toHexString(this.length) + "-" + Long.toHexString(this.lastModified) + "\"" : null;
+		this.mimeType = mimeType;
+		this.checkTime = checkTime;
+	}
+	
+	/**
+	 * Construit les proprits d'un fichier connu comme inexistant, sans interroger le systme de fichiers.
+	 * 
+	 * @param path chemin absolu du fichier
+	 * @param checkTime moment o le fichier a t constat inexistant en ms
+	 */
+	FileMetadata(String path, long checkTime)
+	{
+		this.path = path;
+		this.exists = false;
+		this.directory = false;
+		this.readable = false;
+		this.length = 0;
+		this.lengthText = "0";
+		this.lastModified = 0;
+		this.lastModifiedText = null;
+		this.weakETag = null;
+		this.mimeType = null;
+		this.checkTime = checkTime;
+	}
+	
+	/**
+	 * Retourne le chemin absolu du fichier.
+	 * 
+	 * @return chemin absolu du fichier
+	 */
+	public String getPath()
+	{
+		return this.path;
+	}
+	
+	/**
+	 * Indique si le fichier existe.
+	 * 
+	 * @return vrai si le fichier existe, faux sinon
+	 */
+	public boolean exists()
+	{
+		return this.exists;
+	}
+	
+	/**
+	 * Indique s'il s'agit d'un dossier.
+	 * 
+	 * @return vrai s'il s'agit d'un dossier, faux sinon
+	 */
+	public boolean isDirectory()
+	{
+		return this.directory;
+	}
+	
+	/**
+	 * Indique si le fichier peut tre lu.
+	 * 
+	 * @return vrai si le fichier peut tre lu, faux sinon
+	 */
+	public boolean canRead()
+	{
+		return this.readable;
+	}
+	
+	/**
+	 * Retourne la taille du fichier.
+	 * 
+	 * @return taille du fichier en octets
+	 */
+	public long getLength()
+	{
+		return this.length;
+	}
+	
+	/**
+	 * Retourne la taille du fichier formate pour le champ Content-Length.
+	 * 
+	 * @return taille du fichier en octets, en texte
+	 */
+	public String getLengthText()
+	{
+		return this.lengthText;
+	}
+	
+	/**
+	 * Retourne la date de modification du fichier.
+	 * 
+	 * @return date de modification du fichier en ms
+	 */
+	public long getLastModified()
+	{
+		return this.lastModified;
+	}
+	
+	/**
+	 * Retourne la date de modification formate pour le champ Last-Modified (RFC 1123).
+	 * 
+	 * @return date de modification formate, ou null si le fichier n'existe pas
+	 */
+	public String getLastModifiedText()
+	{
+		return this.lastModifiedText;
+	}
+	
+	/**
+	 * Retourne l'tiquette d'entit faible du fichier (champ ETag), drive de sa taille et de sa date de modification.
+	 * 
+	 * @return tiquette faible, ou null si le fichier n'existe pas
+	 */
+	public String getWeakETag()
+	{
+		return this.weakETag;
+	}
+	
+	// Retourne l'tiquette forte dj calcule, ou null
+	String getStrongETag()
+	{
+		return this.strongETag;
+	}
+	
+	// Conserve l'tiquette forte calcule; seule proprit programme aprs la construction, et toujours  la mme valeur
+	void setStrongETag(String strongETag)
+	{
+		this.strongETag = strongETag;
+	}
+	
+	/**
+	 * Retourne le type MIME correspondant  l'extension du fichier.
+	 * 
+	 * @return type MIME, ou null s'il est inconnu
+	 */
+	public String getMimeType()
+	{
+		return this.mimeType;
+	}
+	
+	/**
+	 * Retourne le moment o les proprits ont t lues.
+	 * 
+	 * @return moment de la lecture en ms
+	 */
+	public long getCheckTime()
+	{
+		return this.checkTime;
+	}
+}
@@ -0,0 +1,364 @@
+package http.server.cache;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.nio.file.Paths;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * La classe FileMetadataCache modlise un cache des proprits des fichiers (voir {@link FileMetadata}), 
+ * index par chemin. Une entre est rutilise sans interroger le systme de fichiers tant que l'intervalle 
+ * de revalidation n'est pas coul depuis sa lecture; les requtes rptes pour un mme fichier n'entranent 
+ * donc presque plus d'appels systme.
+ * <p>
+ * Quand un {@link SiteWatcher} surveille le dossier du site, les entres des fichiers de ce dossier sont plutt 
+ * considres valides jusqu' ce que le surveillant les invalide, sans aucune vrification par requte.
+ * <p>
+ * Les fichiers existants sont conservs dans un dictionnaire; les chemins inexistants le sont dans un cache 
+ * born  expiration (voir {@link NegativeCache}), pour absorber les rafales de requtes menant  une erreur 404. 
+ * Les chemins sont normaliss (p. ex. /./ et //) pour qu'un mme 
+ * fichier n'ait qu'une entre. Le cache peut tre utilis par plusieurs threads  la fois.
+ * <p>
+ * Le cache fournit aussi l'tiquette d'entit (champ ETag) de chaque fichier : faible, drive de la taille et 
+ * de la date de modification, ou forte, drive d'une empreinte du contenu. L'empreinte n'est calcule qu'une 
+ * fois par version du fichier : elle est conserve dans un dictionnaire born index par chemin, date de 
+ * modification et taille, indpendamment de l'intervalle de revalidation des proprits.
+ *
+ * @author Christian Lesage
+ * @author Alexandre Tremblay
+ */
+public class FileMetadataCache
+{
+	// Nombre max. d'entres; le cache est vid s'il est atteint
+	private static final int MAX_ENTRIES = 65536;
+	
+	// Nombre max. d'tiquettes fortes conserves; le dictionnaire est vid s'il est atteint
+	private static final int MAX_STRONG_ETAGS = 4096;
+	
+	// Dictionnaire des extensions et des types MIME correspondants
+	private final Map<String, String> mimeTypes;
+	
+	// Intervalle de revalidation en ms; 0 signifie que les proprits sont toujours relues
+	private final long revalidateInterval;
+	
+	// Dossier dont les entres sont valides jusqu' leur invalidation (null si aucun dossier n'est surveill)
+	private volatile String trustedRoot = null;
+	
+	// Nombre d'invalidations, servant  ne pas conserver des proprits lues avant une invalidation
+	private final AtomicLong invalidations = new AtomicLong();
+	
+	// Entres, par chemin
+	private final ConcurrentHashMap<String, FileMetadata> entries = new ConcurrentHashMap<String, FileMetadata>();
+	
+	// Chemins inexistants (null si dsactiv)
+	private final NegativeCache negativeCache;
+	
+	// Indique si les tiquettes d'entit sont fortes (empreinte du contenu) plutt que faibles
+	private final boolean strongETags;
+	
+	// tiquettes fortes, par chemin, date de modification et taille du fichier
+	private final ConcurrentHashMap<String, String> strongETagsByVersion = new ConcurrentHashMap<String, String>();
+	
+	// Compteurs de statistiques
+	private final AtomicLong digests = new AtomicLong();
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong negativeHits = new AtomicLong();
+	
+	/**
+	 * Construit un cache de proprits de fichiers.
+	 * 
+	 * @param mimeTypes dictionnaire des extensions et des types MIME correspondants
+	 * @param revalidateInterval intervalle de revalidation en ms; 0 pour toujours relire les proprits
+	 * @param negativeCacheSize nombre max. de chemins inexistants conservs; 0 pour ne pas les conserver
+	 * @param negativeCacheTtl dlai d'expiration d'un chemin inexistant en ms
+	 * @param strongETags vrai pour des tiquettes d'entit fortes, calcules  partir du contenu; faux pour 
+	 * des tiquettes faibles, drives de la taille et de la date de modification
+	 */
+	public FileMetadataCache(Map<String, String> mimeTypes, long revalidateInterval, int negativeCacheSize, long negativeCacheTtl, boolean strongETags)
+	{
+		this.strongETags = strongETags;
+		this.mimeTypes = mimeTypes;
+		this.revalidateInterval = Math.max(0, revalidateInterval);
+		this.negativeCache = (negativeCacheSize > 0 && negativeCacheTtl > 0) ? new NegativeCache(negativeCacheSize, negativeCacheTtl) : null;
+	}
+	
+	/**
+	 * Retourne les proprits du fichier spcifi,  partir du cache si elles ont t lues depuis moins 
+	 * longtemps que l'intervalle de revalidation.
+	 * 
+	 * @param path chemin du fichier
+	 * @return proprits du fichier
+	 */
+	public FileMetadata get(String path)
+	{
+		path = normalize(path);
+		
+		long now = System.currentTimeMillis();
+		FileMetadata metadata = this.entries.get(path);
+		
+		if (metadata != null && (now - metadata.getCheckTime() < this.revalidateInterval || this.isTrusted(path)))
+		{
+			this.hits.incrementAndGet();
+			return metadata;
+		}
+		
+		if (this.negativeCache != null && this.negativeCache.contains(path, now))
+		{
+			this.negativeHits.incrementAndGet();
+			return new FileMetadata(path, now);
+		}
+		
+		this.misses.incrementAndGet();
+		
+		long invalidationCount = this.invalidations.get();
+		
+		metadata = new FileMetadata(new File(path), this.getMimeType(path), now);
+		
+		if (metadata.exists() && (this.revalidateInterval > 0 || this.isTrusted(path)))
+		{
+			if (this.entries.size() >= MAX_ENTRIES)
+			{
+				this.entries.clear();
+			}
+			
+			this.entries.put(path, metadata);
+			
+			// Une invalidation survenue pendant la lecture peut concerner ce fichier : l'entre est peut-tre prime
+			if (this.invalidations.get() != invalidationCount)
+			{
+				this.entries.remove(path, metadata);
+			}
+		}
+		else
+		{
+			this.entries.remove(path);
+			
+			// Le chemin n'est conserv que si aucune invalidation n'est survenue pendant la lecture
+			if (!metadata.exists() && this.negativeCache != null && this.invalidations.get() == invalidationCount)
+			{
+				this.negativeCache.add(path, now);
+			}
+		}
+		
+		return metadata;
+	}
+	
+	/**
+	 * Retourne l'tiquette d'entit (champ ETag) du fichier spcifi. Une tiquette forte est calcule  la premire 
+	 * demande pour chaque version du fichier, en le lisant une fois, mme si ses proprits ne sont pas conserves; 
+	 * si le fichier ne peut pas tre lu, l'tiquette faible est retourne.
+	 * 
+	 * @param metadata proprits d'un fichier existant
+	 * @return tiquette d'entit, entre guillemets (prcde de  W/  si elle est faible)
+	 */
+	public String getETag(FileMetadata metadata)
+	{
+		if (!this.strongETags)
+		{
+			return metadata.getWeakETag();
+		}
+		
+		String etag = metadata.getStrongETag();
+		
+		if (etag == null)
+		{
+			String key = metadata.getPath() + '\0' + metadata.getLastModified() + '\0' + metadata.getLength();
+			etag = this.strongETagsByVersion.get(key);
+			
+			if (etag == null)
+			{
+				try
+				{
+					etag = "\"" + digest(metadata.getPath(), metadata.getLength()) + "\"";
+					this.digests.incrementAndGet();
+				}
+				catch (IOException e)
+				{
+					return metadata.getWeakETag();
+				}
+				
+				if (this.strongETagsByVersion.size() >= MAX_STRONG_ETAGS)
+				{
+					this.strongETagsByVersion.clear();
+				}
+				
+				this.strongETagsByVersion.put(key, etag);
+			}
+			
+			metadata.setStrongETag(etag);
+		}
+		
+		return etag;
+	}
+	
+	// Calcule l'empreinte MD5 (en hexadcimal) d'au plus le nombre d'octets spcifi du fichier
+	private static String digest(String path, long length) throws IOException
+	{
+		MessageDigest md;
+		
+		try
+		{
+			md = MessageDigest.getInstance("MD5");
+		}
+		catch (NoSuchAlgorithmException e) // Algorithme exig de toute plateforme Java
+		{
+			throw new IllegalStateException(e);
+		}
+		
+		InputStream is = new FileInputStream(path);
+		
+		try
+		{
+			byte[] buf = new byte[65536];
+			long remaining = length;
+			int len;
+			
+			while (remaining > 0 && (len = is.read(buf, 0, (int) Math.min(buf.length, remaining))) > 0)
+			{
+				md.update(buf, 0, len);
+				remaining -= len;
+			}
+		}
+		finally
+		{
+			try { is.close(); } catch (IOException unused) {}
+		}
+		
+		StringBuilder sb = new StringBuilder(32);
+		
+		for (byte b : md.digest())
+		{
+			sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+		}
+		
+		return sb.toString();
+	}
+	
+	/**
+	 * Indique que les fichiers du dossier spcifi sont surveills : leurs entres restent valides jusqu' 
+	 * leur invalidation.
+	 * 
+	 * @param root chemin absolu du dossier surveill, ou null si plus aucun dossier n'est surveill
+	 */
+	public void setTrustedRoot(String root)
+	{
+		this.trustedRoot = (root != null) ? normalize(root) + File.separator : null;
+	}
+	
+	// Indique si l'entre du fichier spcifi reste valide jusqu' son invalidation
+	private boolean isTrusted(String path)
+	{
+		String root = this.trustedRoot;
+		
+		return root != null && path.startsWith(root);
+	}
+	
+	/**
+	 * Retire du cache les proprits du fichier spcifi.
+	 * 
+	 * @param path chemin du fichier
+	 */
+	public void invalidate(String path)
+	{
+		this.invalidations.incrementAndGet();
+		
+		path = normalize(path);
+		this.entries.remove(path);
+		
+		if (this.negativeCache != null)
+		{
+			this.negativeCache.remove(path);
+		}
+	}
+	
+	/**
+	 * Retire du cache les proprits du fichier ou du dossier spcifi et de tout ce qu'il contient.
+	 * 
+	 * @param path chemin du fichier ou du dossier
+	 */
+	public void invalidateTree(String path)
+	{
+		this.invalidations.incrementAndGet();
+		
+		path = normalize(path);
+		String prefix = path + File.separator;
+		
+		if (this.negativeCache != null)
+		{
+			this.negativeCache.removeTree(path);
+		}
+		
+		for (Iterator<String> iter = this.entries.keySet().iterator(); iter.hasNext(); )
+		{
+			String key = iter.next();
+			
+			if (key.equals(path) || key.startsWith(prefix))
+			{
+				iter.remove();
+			}
+		}
+	}
+	
+	/**
+	 * Vide le cache.
+	 */
+	public void clear()
+	{
+		this.invalidations.incrementAndGet();
+		this.entries.clear();
+		this.strongETagsByVersion.clear();
+		
+		if (this.negativeCache != null)
+		{
+			this.negativeCache.clear();
+		}
+	}
+	
+	// limine les lments superflus d'un chemin (., .. et sparateurs doubls)
+	private static String normalize(String path)
+	{
+		if (path.contains(File.separator + ".") || path.contains(File.separator + File.separator))
+		{
+			return Paths.get(path).normalize().toString();
+		}
+		
+		return path;
+	}
+	
+	/**
+	 * Retourne le type MIME correspondant  l'extension du fichier spcifi.
+	 * 
+	 * @param path chemin du fichier
+	 * @return type MIME, ou null si l'extension est absente ou inconnue
+	 */
+	public String getMimeType(String path)
+	{
+		int dot = path.lastIndexOf('.');
+		
+		if (dot < 0 || dot == path.length() - 1 || path.indexOf('/', dot) >= 0 || path.indexOf(File.separatorChar, dot) >= 0)
+		{
+			return null;
+		}
+		
+		return this.mimeTypes.get(path.substring(dot + 1));
+	}
+	
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString()
+	{
+		return String.format("Cache des proprits de fichiers : %d lments, %d succs, %d checs, %d chemins inexistants, %d succs ngatifs, %d empreintes calcules", 
+				this.entries.size(), this.hits.get(), this.misses.get(), 
+				(this.negativeCache != null) ? this.negativeCache.size() : 0, this.negativeHits.get(), this.digests.get());
+	}
+}
@@ -0,0 +1,116 @@
+package http.server.cache;
+
+/**
+ * La classe FrequencySketch estime la frquence d'accs rcente des cls  l'aide d'un count-min sketch : 
+ * chaque cl incrmente un compteur dans chacune des quatre ranges d'une table, et sa frquence estime 
+ * est le plus petit de ces compteurs. Les compteurs plafonnent  15 et sont tous diviss par deux aprs 
+ * un certain nombre d'incrments, pour que les frquences anciennes s'estompent.
+ * <p>
+ * Sert au filtre d'admission (TinyLFU) des caches : un nouvel lment n'en remplace un autre que s'il 
+ * a t demand plus souvent que celui-ci.
+ *
+ * @author Christian Lesage
+ * @author Alexandre Tremblay
+ */
+class FrequencySketch
+{
+	// Valeur max. d'un compteur
+	private static final int MAX_COUNT = 15;
+	
+	// Multiplicateurs servant  driver une position par range  partir du hash de la cl
+	private static final int[] SEEDS = { 0x9E3779B9, 0x85EBCA6B, 0xC2B2AE35, 0x27D4EB2F };
+	
+	// Compteurs, une range par multiplicateur
+	private final int[][] table;
+	
+	// Dcalage qui ramne un hash de 32 bits  une position dans une range
+	private final int shift;
+	
+	// Nombre d'incrments aprs lequel les compteurs sont diviss par deux
+	private final int sampleSize;
+	
+	// Nombre d'incrments depuis la dernire division
+	private int additions = 0;
+	
+	/**
+	 * Construit un estimateur de frquence.
+	 * 
+	 * @param expectedEntries nombre approximatif d'lments que peut contenir le cache
+	 */
+	FrequencySketch(int expectedEntries)
+	{
+		int width = Integer.highestOneBit(Math.max(16, Math.min(expectedEntries, 1 << 22)) - 1) << 1;
+		
+		this.table = new int[SEEDS.length][width];
+		this.shift = 32 - Integer.numberOfTrailingZeros(width);
+		this.sampleSize = width * 10;
+	}
+	
+	/**
+	 * Compte un accs  la cl spcifie.
+	 * 
+	 * @param key cl demande
+	 */
+	void increment(Object key)
+	{
+		int hash = spread(key.hashCode());
+		boolean added = false;
+		
+		for (int i = 0; i < SEEDS.length; i++)
+		{
+			int index = (hash * SEEDS[i]) >>> this.shift;
+			
+			if (this.table[i][index] < MAX_COUNT)
+			{
+				this.table[i][index]++;
+				added = true;
+			}
+		}
+		
+		if (added && ++this.additions >= this.sampleSize)
+		{
+			this.age();
+		}
+	}
+	
+	/**
+	 * Retourne la frquence d'accs estime de la cl spcifie.
+	 * 
+	 * @param key cl dont la frquence est demande
+	 * @return frquence estime, de 0  15
+	 */
+	int frequency(Object key)
+	{
+		int hash = spread(key.hashCode());
+		int frequency = MAX_COUNT;
+		
+		for (int i = 0; i < SEEDS.length; i++)
+		{
+			frequency = Math.min(frequency, this.table[i][(hash * SEEDS[i]) >>> this.shift]);
+		}
+		
+		return frequency;
+	}
+	
+	// Divise tous les compteurs par deux
+	private void age()
+	{
+		for (int[] row : this.table)
+		{
+			for (int i = 0; i < row.length; i++)
+			{
+				row[i] >>>= 1;
+			}
+		}
+		
+		this.additions /= 2;
+	}
+	
+	// Mlange les bits du hash pour que les bits faibles influencent aussi les positions
+	private static int spread(int hash)
+	{
+		hash ^= hash >>> 16;
+		hash *= 0x45D9F3B;
+		return hash ^ (hash >>> 16);
+	}
+}
@@ -0,0 +1,397 @@
+package http.server.cache;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * La classe MappedFileCache modlise un cache de fichiers projets en mmoire ({@link MappedByteBuffer}). Il sert
+ * les fichiers trop gros pour le cache de contenu : leur contenu est crit sur le socket directement  partir du
+ * cache de pages du systme, sans copie dans le tas ni ouverture rpte du fichier.
+ * <p>
+ * Le total des octets projets est plafonn. Comme pour le cache de contenu, les projections sont vinces de la
+ * moins rcemment utilise  la plus rcemment utilise, et un nouveau fichier n'est projet que s'il a t demand
+ * plus souvent que ceux qu'il remplacerait (TinyLFU).
+ * <p>
+ * Chaque projection obtenue avec {@link #acquire(String, long, long)} doit tre libre avec {@link MappedFile#close()}
+ *  la fin de l'envoi. Une projection vince ou invalide n'est dfaite qu'une fois libre par tous ses
+ * utilisateurs, pour qu'elle ne disparaisse jamais au milieu d'un transfert.
+ *
+ * @author Christian Lesage
+ * @author Alexandre Tremblay
+ */
+public class MappedFileCache
+{
+	// Taille moyenne prsume d'un fichier projet, servant  dimensionner l'estimateur de frquence
+	private static final int AVERAGE_ENTRY_SIZE = 1024 * 1024;
+
+	/**
+	 * Fichier projet en mmoire. Une instance obtenue du cache doit tre libre avec {@link #close()}.
+	 */
+	public class MappedFile implements Closeable
+	{
+		// Projection du fichier au complet
+		private final MappedByteBuffer buffer;
+
+		// Date de modification du fichier au moment de sa projection
+		private final long lastModified;
+
+		// Nombre d'utilisateurs de la projection (protg par le verrou du cache)
+		private int refCount = 0;
+
+		// Indique que la projection ne fait plus partie du cache et doit tre dfaite ds qu'elle est libre
+		private boolean retired = false;
+
+		private MappedFile(MappedByteBuffer buffer, long lastModified)
+		{
+			this.buffer = buffer;
+			this.lastModified = lastModified;
+		}
+
+		/**
+		 * Retourne une vue du contenu du fichier, avec sa propre position,  crire sur un canal.
+		 *
+		 * @return vue du contenu du fichier
+		 */
+		public ByteBuffer slice()
+		{
+			return this.buffer.duplicate();
+		}
+
+		/**
+		 * Libre la projection; aucune vue obtenue de {@link #slice()} ne doit plus servir par la suite.
+		 *
+		 * @see java.io.Closeable#close()
+		 */
+		public void close()
+		{
+			MappedFileCache.this.release(this);
+		}
+	}
+
+	// Total max. des octets projets
+	private final long maxSize;
+
+	// Projections, de la moins rcemment utilise  la plus rcemment utilise
+	private final LinkedHashMap<String, MappedFile> entries = new LinkedHashMap<String, MappedFile>(16, 0.75f, true);
+
+	// Estimateur de la frquence d'accs aux fichiers, servant au filtre d'admission
+	private final FrequencySketch sketch;
+
+	// Total des octets projets, y compris les projections retires du cache mais encore utilises
+	private long size = 0;
+
+	// Compteurs de statistiques
+	private long hits = 0;
+	private long misses = 0;
+	private long evictions = 0;
+	private long rejections = 0;
+
+	/**
+	 * Construit un cache de fichiers projets en mmoire.
+	 *
+	 * @param maxSize total max. des octets projets
+	 */
+	public MappedFileCache(long maxSize)
+	{
+		this.maxSize = maxSize;
+		this.sketch = new FrequencySketch((int) Math.min(Integer.MAX_VALUE, maxSize / AVERAGE_ENTRY_SIZE));
+	}
+
+	/**
+	 * Retourne la projection du fichier spcifi, en projetant le fichier au besoin si le filtre d'admission
+	 * le permet. La projection retourne doit tre libre avec {@link MappedFile#close()}.
+	 *
+	 * @param path chemin absolu du fichier
+	 * @param lastModified date de modification actuelle du fichier
+	 * @param length taille actuelle du fichier
+	 * @return projection du fichier, ou null si le fichier n'est pas projet
+	 * @throws IOException si le fichier ne peut pas tre projet
+	 */
+	public MappedFile acquire(String path, long lastModified, long length) throws IOException
+	{
+		if (length <= 0 || length > this.maxSize || length > Integer.MAX_VALUE)
+		{
+			return null;
+		}
+
+		synchronized (this)
+		{
+			this.sketch.increment(path);
+
+			MappedFile file = this.lookup(path, lastModified, length);
+
+			if (file != null)
+			{
+				this.hits++;
+				return file;
+			}
+
+			this.misses++;
+
+			// Vrifie l'admission avant de projeter le fichier, sans rien vincer
+			if (!this.makeRoom(path, length, false))
+			{
+				this.rejections++;
+				return null;
+			}
+		}
+
+		// La projection, un appel systme parfois long, se fait hors du verrou pour ne pas bloquer les autres 
+		// requtes servies par le cache ni immobiliser le thread porteur d'un thread virtuel
+		MappedByteBuffer buffer;
+		FileChannel channel = new FileInputStream(new File(path)).getChannel();
+
+		try
+		{
+			// Le fichier a chang de taille depuis la lecture de ses proprits
+			if (channel.size() != length)
+			{
+				return null;
+			}
+
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+		}
+		finally
+		{
+			// La projection reste valide aprs la fermeture du canal
+			try { channel.close(); } catch (IOException unused) {}
+		}
+
+		synchronized (this)
+		{
+			// Un autre thread a projet le mme fichier entre-temps : sa projection est utilise et celle-ci est dfaite
+			MappedFile file = this.lookup(path, lastModified, length);
+
+			if (file != null)
+			{
+				unmap(buffer);
+				return file;
+			}
+
+			// Le cache a pu changer pendant la projection; l'admission est vrifie de nouveau
+			if (!this.makeRoom(path, length, true))
+			{
+				this.rejections++;
+				unmap(buffer);
+				return null;
+			}
+
+			file = new MappedFile(buffer, lastModified);
+
+			this.entries.put(path, file);
+			this.size += length;
+
+			file.refCount++;
+			return file;
+		}
+	}
+
+	/**
+	 * Retire du cache la projection du fichier spcifi.
+	 *
+	 * @param path chemin absolu du fichier
+	 */
+	public synchronized void invalidate(String path)
+	{
+		this.retire(path);
+	}
+
+	/**
+	 * Retire du cache les projections du fichier ou du dossier spcifi et de tout ce qu'il contient.
+	 *
+	 * @param path chemin absolu du fichier ou du dossier
+	 */
+	public synchronized void invalidateTree(String path)
+	{
+		String prefix = path + File.separator;
+		List<String> removed = new ArrayList<String>();
+
+		for (String key : this.entries.keySet())
+		{
+			if (key.equals(path) || key.startsWith(prefix))
+			{
+				removed.add(key);
+			}
+		}
+
+		for (String key : removed)
+		{
+			this.retire(key);
+		}
+	}
+
+	/**
+	 * Retire toutes les projections du cache.
+	 */
+	public synchronized void clear()
+	{
+		for (String key : new ArrayList<String>(this.entries.keySet()))
+		{
+			this.retire(key);
+		}
+	}
+
+	// Libre une projection; elle est dfaite si elle a t retire du cache et n'a plus d'utilisateur
+	private synchronized void release(MappedFile file)
+	{
+		if (--file.refCount == 0 && file.retired)
+		{
+			this.unmap(file);
+		}
+	}
+
+	// Retourne la projection  jour du fichier spcifi en y ajoutant un utilisateur, ou null si le fichier 
+	// n'est pas projet. Une projection prime est retire du cache.
+	private MappedFile lookup(String path, long lastModified, long length)
+	{
+		MappedFile file = this.entries.get(path);
+
+		if (file != null)
+		{
+			if (file.lastModified == lastModified && file.buffer.capacity() == length)
+			{
+				file.refCount++;
+				return file;
+			}
+
+			// Fichier modifi depuis sa projection
+			this.retire(path);
+		}
+
+		return null;
+	}
+
+	// vince au besoin les projections les moins rcemment utilises pour faire place au fichier spcifi, 
+	// ou vrifie seulement qu'il y a moyen de le faire si evict est faux. Retourne faux si le fichier n'est 
+	// pas admis parce que moins populaire qu'une projection qu'il remplacerait.
+	private boolean makeRoom(String path, long length, boolean evict)
+	{
+		long needed = this.size + length - this.maxSize;
+
+		if (needed <= 0)
+		{
+			return true;
+		}
+
+		int frequency = this.sketch.frequency(path);
+		List<String> victims = new ArrayList<String>();
+		long freed = 0;
+
+		for (Map.Entry<String, MappedFile> e : this.entries.entrySet())
+		{
+			if (freed >= needed)
+			{
+				break;
+			}
+
+			if (this.sketch.frequency(e.getKey()) >= frequency)
+			{
+				return false;
+			}
+
+			victims.add(e.getKey());
+
+			// Une projection encore utilise ne libre sa place qu'une fois dfaite
+			if (e.getValue().refCount == 0)
+			{
+				freed += e.getValue().buffer.capacity();
+			}
+		}
+
+		if (freed < needed)
+		{
+			return false;
+		}
+
+		if (!evict)
+		{
+			return true;
+		}
+
+		for (String victim : victims)
+		{
+			this.retire(victim);
+			this.evictions++;
+		}
+
+		return true;
+	}
+
+	// Retire une projection du cache; elle est dfaite tout de suite si elle n'a pas d'utilisateur
+	private void retire(String path)
+	{
+		MappedFile file = this.entries.remove(path);
+
+		if (file != null)
+		{
+			file.retired = true;
+
+			if (file.refCount == 0)
+			{
+				this.unmap(file);
+			}
+		}
+	}
+
+	// Dfait une projection sans attendre le ramasse-miettes
+	private void unmap(MappedFile file)
+	{
+		this.size -= file.buffer.capacity();
+		unmap(file.buffer);
+	}
+
+	// Libre la mmoire d'une projection  l'aide des mthodes internes de la JVM (sun.misc.Unsafe.invokeCleaner
+	// depuis Java 9, DirectBuffer.cleaner() auparavant). Si elles ne sont pas accessibles, la projection sera dfaite
+	// par le ramasse-miettes.
+	private static void unmap(MappedByteBuffer buffer)
+	{
+		try
+		{
+			Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+			Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+			Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+			theUnsafe.setAccessible(true);
+			invokeCleaner.invoke(theUnsafe.get(null), buffer);
+			return;
+		}
+		catch (Exception e) // Avant Java 9
+		{
+		}
+
+		try
+		{
+			Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+			cleanerMethod.setAccessible(true);
+			Object cleaner = cleanerMethod.invoke(buffer);
+
+			if (cleaner != null)
+			{
+				cleaner.getClass().getMethod("clean").invoke(cleaner);
+			}
+		}
+		catch (Exception e)
+		{
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public synchronized String toString()
+	{
+		return String.format("Cache de fichiers projets : %d lments, %d / %d octets, %d succs, %d checs, %d victions, %d refus d'admission",
+				this.entries.size(), this.size, this.maxSize, this.hits, this.misses, this.evictions, this.rejections);
+	}
+}
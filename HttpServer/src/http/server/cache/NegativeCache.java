@@ -0,0 +1,130 @@
+package http.server.cache;
+
+import java.io.File;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * La classe NegativeCache modlise un cache born des chemins de fichiers inexistants. Une entre expire aprs 
+ * un dlai fixe; quand le cache est plein, l'entre la moins rcemment utilise est vince (LRU). Les requtes 
+ * rptes pour un chemin inexistant (robots, liens briss) sont ainsi servies sans interroger le systme de fichiers.
+ * <p>
+ * Le cache peut tre utilis par plusieurs threads  la fois.
+ *
+ * @author Christian Lesage
+ * @author Alexandre Tremblay
+ */
+class NegativeCache
+{
+	// Dlai d'expiration d'une entre en ms
+	private final long ttl;
+	
+	// Moments d'expiration des entres, par chemin, du moins rcemment utilis au plus rcemment utilis
+	private final LinkedHashMap<String, Long> entries;
+	
+	/**
+	 * Construit un cache de chemins inexistants.
+	 * 
+	 * @param maxEntries nombre max. d'entres
+	 * @param ttl dlai d'expiration d'une entre en ms
+	 */
+	NegativeCache(final int maxEntries, long ttl)
+	{
+		this.ttl = ttl;
+		this.entries = new LinkedHashMap<String, Long>(16, 0.75f, true)
+		{
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Long> eldest)
+			{
+				return this.size() > maxEntries;
+			}
+		};
+	}
+	
+	/**
+	 * Indique si le chemin spcifi est connu comme inexistant.
+	 * 
+	 * @param path chemin normalis
+	 * @param now moment prsent en ms
+	 * @return vrai si le chemin est inexistant selon une entre non expire, faux sinon
+	 */
+	synchronized boolean contains(String path, long now)
+	{
+		Long expiry = this.entries.get(path);
+		
+		if (expiry == null)
+		{
+			return false;
+		}
+		
+		if (now >= expiry)
+		{
+			this.entries.remove(path);
+			return false;
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * Ajoute un chemin inexistant au cache.
+	 * 
+	 * @param path chemin normalis
+	 * @param now moment prsent en ms
+	 */
+	synchronized void add(String path, long now)
+	{
+		this.entries.put(path, now + this.ttl);
+	}
+	
+	/**
+	 * Retire du cache le chemin spcifi.
+	 * 
+	 * @param path chemin normalis
+	 */
+	synchronized void remove(String path)
+	{
+		this.entries.remove(path);
+	}
+	
+	/**
+	 * Retire du cache le chemin spcifi et tous les chemins qu'il contient.
+	 * 
+	 * @param path chemin normalis d'un fichier ou d'un dossier
+	 */
+	synchronized void removeTree(String path)
+	{
+		String prefix = path + File.separator;
+		
+		for (Iterator<String> iter = this.entries.keySet().iterator(); iter.hasNext(); )
+		{
+			String key = iter.next();
+			
+			if (key.equals(path) || key.startsWith(prefix))
+			{
+				iter.remove();
+			}
+		}
+	}
+	
+	/**
+	 * Vide le cache.
+	 */
+	synchronized void clear()
+	{
+		this.entries.clear();
+	}
+	
+	/**
+	 * Retourne le nombre d'entres dans le cache.
+	 * 
+	 * @return nombre d'entres
+	 */
+	synchronized int size()
+	{
+		return this.entries.size();
+	}
+}
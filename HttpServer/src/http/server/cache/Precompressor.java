@@ -0,0 +1,246 @@
+package http.server.cache;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * La classe Precompressor crit  l'avance la version gzip (fichier frre  .gz ) de chaque fichier compressible
+ * du site, pour que le serveur n'ait pas  compresser  la vole. Les dossiers sont parcourus en parallle
+ * par un {@link ForkJoinPool}.
+ * <p>
+ * Le fichier  .gz  reoit la date de modification de son original : il est considr  jour tant que les
+ * deux dates sont gales, et il est rcrit sinon. Il est d'abord crit sous un nom temporaire puis renomm,
+ * pour que le serveur ne serve jamais un fichier incomplet.
+ *
+ * @author Christian Lesage
+ * @author Alexandre Tremblay
+ */
+public class Precompressor
+{
+	/**
+	 * Suffixe des fichiers prcompresss
+	 */
+	public static final String GZIP_SUFFIX = ".gz";
+
+	// Suffixe des fichiers prcompresss en cours d'criture
+	private static final String TEMP_SUFFIX = ".tmp";
+
+	// Dictionnaire des extensions et des types MIME correspondants
+	private final Map<String, String> mimeTypes;
+
+	// Codeur qui dtermine les fichiers compressibles
+	private final ContentEncoder encoder;
+
+	// Compteurs de statistiques
+	private final AtomicInteger written = new AtomicInteger();
+	private final AtomicInteger upToDate = new AtomicInteger();
+	private final AtomicInteger failed = new AtomicInteger();
+
+	/**
+	 * Construit un prcompresseur.
+	 *
+	 * @param mimeTypes dictionnaire des extensions et des types MIME correspondants
+	 * @param minSize taille min. d'un fichier  compresser en octets
+	 */
+	public Precompressor(Map<String, String> mimeTypes, int minSize)
+	{
+		this.mimeTypes = mimeTypes;
+		this.encoder = new ContentEncoder(minSize, Deflater.BEST_COMPRESSION);
+	}
+
+	/**
+	 * Prcompresse tous les fichiers compressibles du dossier spcifi et de ses sous-dossiers.
+	 *
+	 * @param root dossier du site
+	 * @param parallelism nombre de threads de compression
+	 */
+	public void run(File root, int parallelism)
+	{
+		ForkJoinPool pool = new ForkJoinPool(parallelism);
+
+		try
+		{
+			pool.invoke(new DirectoryTask(root));
+		}
+		finally
+		{
+			pool.shutdown();
+		}
+	}
+
+	// Tche qui traite les fichiers d'un dossier et lance une sous-tche par sous-dossier
+	private class DirectoryTask extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+
+		// Dossier  traiter
+		private final File dir;
+
+		DirectoryTask(File dir)
+		{
+			this.dir = dir;
+		}
+
+		@Override
+		protected void compute()
+		{
+			File[] files = this.dir.listFiles();
+
+			if (files == null)
+			{
+				System.err.println("Impossible de lire le dossier " + this.dir);
+				return;
+			}
+
+			List<DirectoryTask> subtasks = new ArrayList<DirectoryTask>();
+
+			for (File file : files)
+			{
+				if (file.isDirectory())
+				{
+					subtasks.add(new DirectoryTask(file));
+				}
+				else
+				{
+					Precompressor.this.process(file);
+				}
+			}
+
+			invokeAll(subtasks);
+		}
+	}
+
+	// crit la version gzip du fichier spcifi s'il est compressible et qu'elle est absente ou prime
+	private void process(File file)
+	{
+		String name = file.getName();
+
+		if (name.endsWith(GZIP_SUFFIX) || name.endsWith(GZIP_SUFFIX + TEMP_SUFFIX))
+		{
+			return;
+		}
+
+		int dot = name.lastIndexOf('.');
+		String mimeType = (dot < 0) ? null : this.mimeTypes.get(name.substring(dot + 1));
+
+		if (!this.encoder.isCompressible(mimeType, file.length()))
+		{
+			return;
+		}
+
+		File gzFile = new File(file.getPath() + GZIP_SUFFIX);
+
+		if (gzFile.isFile() && gzFile.lastModified() == file.lastModified())
+		{
+			this.upToDate.incrementAndGet();
+			return;
+		}
+
+		try
+		{
+			compress(file, gzFile);
+			this.written.incrementAndGet();
+		}
+		catch (IOException e)
+		{
+			System.err.println("Impossible de compresser " + file + " : " + e.getMessage());
+			this.failed.incrementAndGet();
+		}
+	}
+
+	// Compresse un fichier dans un fichier temporaire, puis le renomme en fichier  .gz 
+	private static void compress(File file, File gzFile) throws IOException
+	{
+		long lastModified = file.lastModified();
+		File tempFile = new File(gzFile.getPath() + TEMP_SUFFIX);
+		InputStream is = new FileInputStream(file);
+
+		try
+		{
+			OutputStream os = new GZIPOutputStream(new FileOutputStream(tempFile), 65536)
+			{
+				{
+					this.def.setLevel(Deflater.BEST_COMPRESSION);
+				}
+			};
+
+			try
+			{
+				byte[] buf = new byte[65536];
+				int len;
+
+				while ((len = is.read(buf)) > 0)
+				{
+					os.write(buf, 0, len);
+				}
+			}
+			finally
+			{
+				os.close();
+			}
+		}
+		catch (IOException e)
+		{
+			tempFile.delete();
+			throw e;
+		}
+		finally
+		{
+			try { is.close(); } catch (IOException unused) {}
+		}
+
+		// Original modifi pendant la compression : la version sera rcrite au prochain passage
+		if (file.lastModified() != lastModified)
+		{
+			tempFile.delete();
+			throw new IOException("fichier modifi pendant la compression");
+		}
+
+		tempFile.setLastModified(lastModified);
+		Files.move(tempFile.toPath(), gzFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Retourne le nombre de fichiers  .gz  crits.
+	 *
+	 * @return nombre de fichiers crits
+	 */
+	public int getWritten()
+	{
+		return this.written.get();
+	}
+
+	/**
+	 * Retourne le nombre de fichiers  .gz  dj  jour.
+	 *
+	 * @return nombre de fichiers  jour
+	 */
+	public int getUpToDate()
+	{
+		return this.upToDate.get();
+	}
+
+	/**
+	 * Retourne le nombre de fichiers qui n'ont pas pu tre compresss.
+	 *
+	 * @return nombre d'checs
+	 */
+	public int getFailed()
+	{
+		return this.failed.get();
+	}
+}
@@ -0,0 +1,412 @@
+package http.server.cache;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.Charset;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+/**
+ * La classe SharedContentCache modlise un cache du contenu des fichiers du site conserv dans un fichier projet
+ * en mmoire et partag par tous les serveurs d'une mme machine. Le contenu d'un fichier populaire n'existe
+ * qu'en un exemplaire pour tous les processus, et un nouveau processus profite ds son dmarrage des fichiers
+ * dj lus par les autres.
+ * <p>
+ * Le fichier partag est divis en cases de taille fixe. Un fichier du site peut occuper l'une de deux cases
+ * dtermines par le hash de son chemin; la plus anciennement crite est remplace.
+ * <p>
+ * La lecture se fait sans verrou : chaque case porte un numro de squence, impair pendant une criture,
+ * qui doit tre pair et inchang avant et aprs la copie du contenu, et le contenu copi doit correspondre
+ *  sa somme de contrle CRC32. Une criture se fait sous un verrou de fichier sur la case ({@link FileLock}),
+ * pour exclure les autres processus; si la case est dj verrouille, l'criture est simplement abandonne.
+ * <p>
+ * Comme pour le cache de contenu, un lment n'est servi que si la date de modification et la taille du fichier
+ * n'ont pas chang depuis sa lecture; chaque processus valide donc lui-mme les lments crits par les autres.
+ *
+ * @author Christian Lesage
+ * @author Alexandre Tremblay
+ */
+public class SharedContentCache
+{
+	// Identifiant du format du fichier partag
+	private static final int MAGIC = 0x4F4B4443;
+
+	// Version du format du fichier partag
+	private static final int VERSION = 1;
+
+	// Taille de l'entte du fichier partag (identifiant, version, taille et nombre des cases)
+	private static final int FILE_HEADER_SIZE = 64;
+
+	// Longueur max. en octets du chemin d'un fichier conserv
+	private static final int MAX_PATH_SIZE = 512;
+
+	// Position des champs dans une case
+	private static final int SEQUENCE = 0;
+	private static final int WRITE_TIME = 8;
+	private static final int LAST_MODIFIED = 16;
+	private static final int LENGTH = 24;
+	private static final int CHECKSUM = 28;
+	private static final int PATH_SIZE = 32;
+	private static final int PATH = 36;
+
+	// Taille de l'entte d'une case; le contenu du fichier suit
+	private static final int SLOT_HEADER_SIZE = PATH + MAX_PATH_SIZE;
+
+	// Encodage des chemins
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	// Chemin du fichier partag
+	private final String fileName;
+
+	// Canal du fichier partag, servant aux verrous
+	private final FileChannel channel;
+
+	// Projection du fichier partag au complet
+	private final MappedByteBuffer buffer;
+
+	// Taille d'une case
+	private final int slotSize;
+
+	// Nombre de cases (puissance de deux)
+	private final int slotCount;
+
+	// Lecteur des fichiers absents du cache, qui regroupe les lectures simultanes d'un mme fichier
+	private final FileLoader loader = new FileLoader();
+
+	// Compteurs de statistiques (propres  ce processus)
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong writes = new AtomicLong();
+	private final AtomicLong collisions = new AtomicLong();
+
+	/**
+	 * Ouvre le fichier partag spcifi, en le crant s'il n'existe pas.
+	 *
+	 * @param fileName chemin du fichier partag
+	 * @param maxSize taille vise du fichier partag en octets
+	 * @param slotSize taille d'une case en octets, qui dtermine la taille max. d'un fichier conserv
+	 * @throws IOException si le fichier ne peut pas tre ouvert, ou s'il a t cr par un autre processus
+	 * avec une autre taille de case ou un autre nombre de cases
+	 */
+	public SharedContentCache(String fileName, long maxSize, int slotSize) throws IOException
+	{
+		this.fileName = fileName;
+		this.slotSize = Math.max(slotSize, SLOT_HEADER_SIZE + 1);
+
+		// Une seule projection ne peut pas dpasser 2 Go
+		long maxSlots = Math.min(maxSize, Integer.MAX_VALUE - FILE_HEADER_SIZE) / this.slotSize;
+		this.slotCount = maxSlots >= 2 ? Integer.highestOneBit((int) maxSlots) : 2;
+
+		long fileSize = FILE_HEADER_SIZE + (long) this.slotCount * this.slotSize;
+
+		RandomAccessFile raf = new RandomAccessFile(new File(fileName), "rw");
+		this.channel = raf.getChannel();
+
+		try
+		{
+			// Un seul processus  la fois cre ou vrifie l'entte
+			FileLock lock = this.channel.lock(0, FILE_HEADER_SIZE, false);
+
+			try
+			{
+				if (this.channel.size() == 0)
+				{
+					// Un fichier agrandi est rempli de zros : toutes les cases sont vides
+					raf.setLength(fileSize);
+
+					ByteBuffer header = ByteBuffer.allocate(16);
+					header.putInt(MAGIC).putInt(VERSION).putInt(this.slotSize).putInt(this.slotCount);
+					header.flip();
+					this.channel.write(header, 0);
+				}
+				else
+				{
+					ByteBuffer header = ByteBuffer.allocate(16);
+					this.channel.read(header, 0);
+					header.flip();
+
+					if (header.remaining() < 16 || header.getInt() != MAGIC || header.getInt() != VERSION
+							|| header.getInt() != this.slotSize || header.getInt() != this.slotCount || this.channel.size() < fileSize)
+					{
+						throw new IOException("le fichier " + fileName + " a t cr avec une autre configuration");
+					}
+				}
+			}
+			finally
+			{
+				lock.release();
+			}
+
+			this.buffer = this.channel.map(FileChannel.MapMode.READ_WRITE, 0, fileSize);
+		}
+		catch (IOException e)
+		{
+			try { this.channel.close(); } catch (IOException unused) {}
+			throw e;
+		}
+	}
+
+	/**
+	 * Retourne le contenu du fichier spcifi,  partir du fichier partag s'il y est encore valide, sinon en lisant
+	 * le fichier et en tentant de l'y crire.
+	 *
+	 * @param path chemin absolu du fichier
+	 * @param lastModified date de modification actuelle du fichier
+	 * @param length taille actuelle du fichier
+	 * @return contenu du fichier, ou null si le fichier est trop gros pour une case
+	 * @throws IOException si le fichier ne peut pas tre lu
+	 */
+	public byte[] get(String path, long lastModified, long length) throws IOException
+	{
+		byte[] pathBytes = path.getBytes(UTF8);
+
+		if (length > this.slotSize - SLOT_HEADER_SIZE || pathBytes.length > MAX_PATH_SIZE)
+		{
+			return null;
+		}
+
+		long hash = hash(pathBytes);
+		byte[] data = this.read(this.slotOffset(hash, 0), pathBytes, lastModified, (int) length);
+
+		if (data == null)
+		{
+			data = this.read(this.slotOffset(hash, 1), pathBytes, lastModified, (int) length);
+		}
+
+		if (data != null)
+		{
+			this.hits.incrementAndGet();
+			return data;
+		}
+
+		this.misses.incrementAndGet();
+
+		// Les threads qui attendaient la lecture d'un autre trouvent le fichier dj crit
+		data = this.loader.load(path, lastModified, length);
+
+		// Le fichier n'est conserv que s'il n'a pas chang de taille pendant sa lecture
+		if (data.length == length)
+		{
+			this.write(hash, pathBytes, lastModified, data);
+		}
+
+		return data;
+	}
+
+	// Copie le contenu de la case spcifie si elle contient une version valide du fichier demand, sans verrou
+	private byte[] read(int offset, byte[] pathBytes, long lastModified, int length)
+	{
+		ByteBuffer buf = this.buffer.duplicate();
+
+		long sequence = buf.getLong(offset + SEQUENCE);
+
+		// Case vide ou en cours d'criture
+		if (sequence == 0 || (sequence & 1) != 0)
+		{
+			return null;
+		}
+
+		if (buf.getLong(offset + LAST_MODIFIED) != lastModified || buf.getInt(offset + LENGTH) != length
+				|| buf.getInt(offset + PATH_SIZE) != pathBytes.length)
+		{
+			return null;
+		}
+
+		for (int i = 0; i < pathBytes.length; i++)
+		{
+			if (buf.get(offset + PATH + i) != pathBytes[i])
+			{
+				return null;
+			}
+		}
+
+		int checksum = buf.getInt(offset + CHECKSUM);
+		byte[] data = new byte[length];
+		buf.position(offset + SLOT_HEADER_SIZE);
+		buf.get(data);
+
+		// Case rcrite pendant la copie
+		if (buf.getLong(offset + SEQUENCE) != sequence)
+		{
+			return null;
+		}
+
+		// criture d'un autre processus pas encore entirement visible, ou case corrompue
+		if (crc(data) != checksum)
+		{
+			return null;
+		}
+
+		return data;
+	}
+
+	// crit le contenu d'un fichier dans la plus anciennement crite de ses deux cases,  moins qu'un autre
+	// processus soit en train d'y crire
+	private synchronized void write(long hash, byte[] pathBytes, long lastModified, byte[] data)
+	{
+		int offset = this.chooseSlot(hash, pathBytes);
+		FileLock lock = null;
+
+		try
+		{
+			lock = this.channel.tryLock(offset, this.slotSize, false);
+
+			if (lock == null)
+			{
+				this.collisions.incrementAndGet();
+				return;
+			}
+
+			long sequence = this.buffer.getLong(offset + SEQUENCE);
+
+			// Mme version dj crite, p. ex. par un thread qui attendait la mme lecture
+			if (sequence != 0 && (sequence & 1) == 0 && this.holds(offset, pathBytes)
+					&& this.buffer.getLong(offset + LAST_MODIFIED) == lastModified && this.buffer.getInt(offset + LENGTH) == data.length)
+			{
+				return;
+			}
+
+			// Numro de squence impair : les lecteurs ignorent la case pendant l'criture
+			sequence |= 1;
+			this.buffer.putLong(offset + SEQUENCE, sequence);
+
+			this.buffer.putLong(offset + WRITE_TIME, System.currentTimeMillis());
+			this.buffer.putLong(offset + LAST_MODIFIED, lastModified);
+			this.buffer.putInt(offset + LENGTH, data.length);
+			this.buffer.putInt(offset + CHECKSUM, crc(data));
+			this.buffer.putInt(offset + PATH_SIZE, pathBytes.length);
+
+			ByteBuffer buf = this.buffer.duplicate();
+			buf.position(offset + PATH);
+			buf.put(pathBytes);
+			buf.position(offset + SLOT_HEADER_SIZE);
+			buf.put(data);
+
+			this.buffer.putLong(offset + SEQUENCE, sequence + 1);
+			this.writes.incrementAndGet();
+		}
+		catch (OverlappingFileLockException e) // Case dj verrouille par ce processus
+		{
+			this.collisions.incrementAndGet();
+		}
+		catch (IOException e) // Le fichier ne sera simplement pas partag
+		{
+		}
+		finally
+		{
+			if (lock != null)
+			{
+				try { lock.release(); } catch (IOException unused) {}
+			}
+		}
+	}
+
+	// Retourne la position de la case  crire : celle qui contient dj le fichier, sinon une case vide,
+	// sinon la plus anciennement crite
+	private int chooseSlot(long hash, byte[] pathBytes)
+	{
+		int first = this.slotOffset(hash, 0);
+		int second = this.slotOffset(hash, 1);
+
+		if (this.holds(first, pathBytes))
+		{
+			return first;
+		}
+
+		if (this.holds(second, pathBytes))
+		{
+			return second;
+		}
+
+		if (this.buffer.getLong(first + SEQUENCE) == 0)
+		{
+			return first;
+		}
+
+		if (this.buffer.getLong(second + SEQUENCE) == 0)
+		{
+			return second;
+		}
+
+		return this.buffer.getLong(first + WRITE_TIME) <= this.buffer.getLong(second + WRITE_TIME) ? first : second;
+	}
+
+	// Indique si la case spcifie contient une version, valide ou non, du fichier spcifi
+	private boolean holds(int offset, byte[] pathBytes)
+	{
+		if (this.buffer.getInt(offset + PATH_SIZE) != pathBytes.length)
+		{
+			return false;
+		}
+
+		for (int i = 0; i < pathBytes.length; i++)
+		{
+			if (this.buffer.get(offset + PATH + i) != pathBytes[i])
+			{
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	// Retourne la position de l'une des deux cases possibles d'un fichier
+	private int slotOffset(long hash, int choice)
+	{
+		int index = (int) (choice == 0 ? hash : hash >>> 32) & (this.slotCount - 1);
+
+		// Les deux cases doivent tre diffrentes
+		if (choice == 1 && index == ((int) hash & (this.slotCount - 1)))
+		{
+			index ^= 1;
+		}
+
+		return FILE_HEADER_SIZE + index * this.slotSize;
+	}
+
+	// Hash FNV-1a de 64 bits d'un chemin, identique dans tous les processus
+	private static long hash(byte[] bytes)
+	{
+		long hash = 0xCBF29CE484222325L;
+
+		for (byte b : bytes)
+		{
+			hash ^= b & 0xFF;
+			hash *= 0x100000001B3L;
+		}
+
+		return hash;
+	}
+
+	// Somme de contrle CRC32 d'un contenu
+	private static int crc(byte[] data)
+	{
+		CRC32 crc = new CRC32();
+		crc.update(data, 0, data.length);
+		return (int) crc.getValue();
+	}
+
+	/**
+	 * Ferme le fichier partag. Sa projection reste valide jusqu' ce qu'elle soit rcupre par le ramasse-miettes.
+	 */
+	public void close()
+	{
+		try { this.channel.close(); } catch (IOException unused) {}
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString()
+	{
+		return String.format("Cache partag %s : %d cases de %d octets, %d succs, %d checs, %d lectures regroupes, %d critures, %d critures abandonnes",
+				this.fileName, this.slotCount, this.slotSize, this.hits.get(), this.misses.get(), this.loader.getCoalesced(), this.writes.get(), this.collisions.get());
+	}
+}
@@ -0,0 +1,194 @@
+package http.server.cache;
+
+/**
+ * La classe SiteCache regroupe les caches des fichiers du site partags par toutes les instances de serveur :
+ * proprits des fichiers, contenu des petits fichiers (propre au processus ou partag par les serveurs de la machine),
+ * projections en mmoire des gros fichiers et pages d'erreur. Elle fournit aussi le codeur qui compresse
+ * les versions des fichiers conserves dans le cache de contenu.
+ * Elle permet d'invalider un fichier dans tous les caches  la fois (voir {@link SiteWatcher}).
+ *
+ * @author Christian Lesage
+ * @author Alexandre Tremblay
+ */
+public class SiteCache
+{
+	// Cache des proprits des fichiers
+	private final FileMetadataCache metadataCache;
+
+	// Cache du contenu des petits fichiers (null si dsactiv)
+	private final ContentCache contentCache;
+
+	// Cache des projections en mmoire des gros fichiers (null si dsactiv)
+	private final MappedFileCache mappedCache;
+
+	// Cache du contenu des petits fichiers partag par les serveurs de la machine (null si dsactiv).
+	// Ses lments sont valids  chaque lecture et n'ont pas  tre invalids.
+	private final SharedContentCache sharedCache;
+
+	// Pages d'erreur conserves en mmoire
+	private final ErrorPageCache errorPages = new ErrorPageCache();
+
+	// Codeur des versions compresses des fichiers (null si la compression est dsactive)
+	private final ContentEncoder encoder;
+
+	/**
+	 * Construit l'ensemble des caches du site.
+	 *
+	 * @param metadataCache cache des proprits des fichiers
+	 * @param contentCache cache du contenu des petits fichiers, ou null s'il est dsactiv
+	 * @param mappedCache cache des projections en mmoire des gros fichiers, ou null s'il est dsactiv
+	 * @param sharedCache cache du contenu partag par les serveurs de la machine, ou null s'il est dsactiv
+	 * @param encoder codeur des versions compresses des fichiers, ou null si la compression est dsactive
+	 */
+	public SiteCache(FileMetadataCache metadataCache, ContentCache contentCache, MappedFileCache mappedCache, 
+			SharedContentCache sharedCache, ContentEncoder encoder)
+	{
+		this.encoder = encoder;
+		this.metadataCache = metadataCache;
+		this.contentCache = contentCache;
+		this.mappedCache = mappedCache;
+		this.sharedCache = sharedCache;
+	}
+
+	/**
+	 * Retire le fichier spcifi de tous les caches.
+	 *
+	 * @param path chemin absolu du fichier
+	 */
+	public void invalidate(String path)
+	{
+		this.metadataCache.invalidate(path);
+
+		if (this.contentCache != null)
+		{
+			this.contentCache.invalidate(path);
+		}
+
+		if (this.mappedCache != null)
+		{
+			this.mappedCache.invalidate(path);
+		}
+	}
+
+	/**
+	 * Retire de tous les caches le fichier ou le dossier spcifi et tout ce qu'il contient.
+	 *
+	 * @param path chemin absolu du fichier ou du dossier
+	 */
+	public void invalidateTree(String path)
+	{
+		this.metadataCache.invalidateTree(path);
+
+		if (this.contentCache != null)
+		{
+			this.contentCache.invalidateTree(path);
+		}
+
+		if (this.mappedCache != null)
+		{
+			this.mappedCache.invalidateTree(path);
+		}
+	}
+
+	/**
+	 * Vide tous les caches.
+	 */
+	public void clear()
+	{
+		this.metadataCache.clear();
+
+		if (this.contentCache != null)
+		{
+			this.contentCache.clear();
+		}
+
+		if (this.mappedCache != null)
+		{
+			this.mappedCache.clear();
+		}
+	}
+
+	/**
+	 * Retourne le cache des proprits des fichiers.
+	 *
+	 * @return cache des proprits des fichiers
+	 */
+	public FileMetadataCache getMetadataCache()
+	{
+		return this.metadataCache;
+	}
+
+	/**
+	 * Retourne le cache du contenu des petits fichiers.
+	 *
+	 * @return cache du contenu, ou null s'il est dsactiv
+	 */
+	public ContentCache getContentCache()
+	{
+		return this.contentCache;
+	}
+
+	/**
+	 * Retourne le cache des projections en mmoire des gros fichiers.
+	 *
+	 * @return cache des projections, ou null s'il est dsactiv
+	 */
+	public MappedFileCache getMappedCache()
+	{
+		return this.mappedCache;
+	}
+
+	/**
+	 * Retourne le cache du contenu partag par les serveurs de la machine.
+	 *
+	 * @return cache partag, ou null s'il est dsactiv
+	 */
+	public SharedContentCache getSharedCache()
+	{
+		return this.sharedCache;
+	}
+
+	/**
+	 * Retourne le codeur des versions compresses des fichiers.
+	 *
+	 * @return codeur, ou null si la compression est dsactive
+	 */
+	public ContentEncoder getEncoder()
+	{
+		return this.encoder;
+	}
+
+	/**
+	 * Libre les ressources des caches (fichier du cache partag).
+	 */
+	public void close()
+	{
+		if (this.sharedCache != null)
+		{
+			this.sharedCache.close();
+		}
+	}
+
+	/**
+	 * Retourne les pages d'erreur conserves en mmoire.
+	 *
+	 * @return pages d'erreur
+	 */
+	public ErrorPageCache getErrorPages()
+	{
+		return this.errorPages;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString()
+	{
+		return this.metadataCache + "\n"
+				+ (this.contentCache != null ? this.contentCache.toString() : "Cache de contenu dsactiv") + "\n"
+				+ (this.mappedCache != null ? this.mappedCache.toString() : "Cache de fichiers projets dsactiv") + "\n"
+				+ (this.sharedCache != null ? this.sharedCache.toString() : "Cache partag dsactiv") + "\n"
+				+ (this.encoder != null ? this.encoder.toString() : "Compression dsactive") + "\n";
+	}
+}
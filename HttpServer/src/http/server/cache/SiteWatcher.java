@@ -0,0 +1,176 @@
+package http.server.cache;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * La classe SiteWatcher modlise un surveillant du dossier du site Web qui s'excute dans un thread. Il enregistre
+ * tous les dossiers du site auprs d'un {@link WatchService} et invalide les entres des caches ds qu'un fichier
+ * est cr, modifi ou supprim. Pendant qu'il s'excute, le cache des proprits des fichiers considre ses entres
+ * valides sans vrification par requte; un dploiement est donc visible en quelques millisecondes.
+ * <p>
+ * Si des vnements ont t perdus (dbordement), les caches sont vids au complet.
+ *
+ * @author Christian Lesage
+ * @author Alexandre Tremblay
+ */
+public class SiteWatcher implements Runnable
+{
+	// Dossier du site surveill
+	private final Path root;
+
+	// Service de surveillance du systme de fichiers
+	private final WatchService watchService;
+
+	// Caches du site  invalider
+	private final SiteCache cache;
+
+	// Dossiers surveills, par cl de surveillance
+	private final Map<WatchKey, Path> directories = new HashMap<WatchKey, Path>();
+
+	/**
+	 * Construit un surveillant et enregistre tous les dossiers du site.
+	 *
+	 * @param root dossier du site  surveiller
+	 * @param cache caches du site  invalider
+	 * @throws IOException si la surveillance ne peut pas tre mise en place
+	 */
+	public SiteWatcher(File root, SiteCache cache) throws IOException
+	{
+		this.root = root.getAbsoluteFile().toPath().normalize();
+		this.cache = cache;
+		this.watchService = FileSystems.getDefault().newWatchService();
+
+		try
+		{
+			this.registerTree(this.root);
+		}
+		catch (IOException e)
+		{
+			try { this.watchService.close(); } catch (IOException unused) {}
+			throw e;
+		}
+	}
+
+	/**
+	 * Arrte la surveillance. Les entres des caches redeviennent vrifies priodiquement.
+	 */
+	public void stop()
+	{
+		this.cache.getMetadataCache().setTrustedRoot(null);
+
+		try { this.watchService.close(); } catch (IOException unused) {}
+	}
+
+	/**
+	 * Attend les vnements du systme de fichiers et invalide les entres correspondantes des caches
+	 * jusqu' l'arrt du surveillant.
+	 *
+	 * @see java.lang.Runnable#run()
+	 */
+	public void run()
+	{
+		// Les entres lues avant le dbut de la surveillance ne sont peut-tre plus valides
+		this.cache.clear();
+		this.cache.getMetadataCache().setTrustedRoot(this.root.toString());
+
+		try
+		{
+			while (true)
+			{
+				WatchKey key = this.watchService.take();
+				Path dir = this.directories.get(key);
+
+				for (WatchEvent<?> event : key.pollEvents())
+				{
+					if (event.kind() == OVERFLOW || dir == null)
+					{
+						this.cache.clear();
+						continue;
+					}
+
+					Path path = dir.resolve((Path) event.context());
+
+					if (event.kind() == ENTRY_MODIFY)
+					{
+						this.cache.invalidate(path.toString());
+					}
+					else
+					{
+						// Cration, suppression ou renommage : peut concerner un dossier et tout son contenu
+						this.cache.invalidateTree(path.toString());
+
+						if (event.kind() == ENTRY_CREATE && Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS))
+						{
+							this.registerNewTree(path);
+						}
+					}
+				}
+
+				// Le dossier n'existe plus
+				if (!key.reset())
+				{
+					this.directories.remove(key);
+				}
+			}
+		}
+		catch (InterruptedException e)
+		{
+		}
+		catch (ClosedWatchServiceException e)
+		{
+		}
+		finally
+		{
+			this.cache.getMetadataCache().setTrustedRoot(null);
+		}
+	}
+
+	// Enregistre un dossier cr pendant la surveillance; les fichiers qui y ont t crs avant son
+	// enregistrement n'ont produit aucun vnement et sont donc invalids par prcaution
+	private void registerNewTree(Path dir)
+	{
+		try
+		{
+			this.registerTree(dir);
+		}
+		catch (IOException e)
+		{
+			System.err.println("Impossible de surveiller le dossier " + dir + " : " + e.getMessage());
+		}
+
+		this.cache.invalidateTree(dir.toString());
+	}
+
+	// Enregistre un dossier et tous ses sous-dossiers
+	private void registerTree(Path start) throws IOException
+	{
+		Files.walkFileTree(start, new SimpleFileVisitor<Path>()
+		{
+			@Override
+			public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException
+			{
+				SiteWatcher.this.directories.put(dir.register(SiteWatcher.this.watchService, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY), dir);
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+}
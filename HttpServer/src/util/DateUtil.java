@@ -6,14 +6,21 @@ import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Collection;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.Locale;
+import java.util.Map;
 import java.util.TimeZone;
 
 /**
  * A utility class for parsing and formatting HTTP dates as used in cookies and
  * other headers. This class handles dates as defined by RFC 2616 section 3.3.1
  * as well as some other common non-standard formats.
- * 
+ * <p>
+ * The three RFC 2616 formats are parsed and formatted by hand, without
+ * {@link SimpleDateFormat}; other formats fall back to per-thread
+ * {@link SimpleDateFormat} instances. The current date, sent with every
+ * response, is formatted at most once per second.
+ *
  * @author Christopher Brown
  * @author Michael Becke
  */
@@ -35,7 +42,13 @@ public final class DateUtil
 	 */
 	public static final String PATTERN_ASCTIME = "EEE MMM d HH:mm:ss yyyy";
 
-	private static final Collection<String> DEFAULT_PATTERNS = 
+	/**
+	 * Value returned by {@link #parseSeconds(String)} for a date that cannot
+	 * be parsed.
+	 */
+	public static final long INVALID_DATE = Long.MIN_VALUE;
+
+	private static final Collection<String> DEFAULT_PATTERNS =
 			Arrays.asList(new String[] { PATTERN_ASCTIME, PATTERN_RFC1036, PATTERN_RFC1123 });
 
 	private static final Date DEFAULT_TWO_DIGIT_YEAR_START;
@@ -49,6 +62,28 @@ public final class DateUtil
 
 	private static final TimeZone GMT = TimeZone.getTimeZone("GMT");
 
+	// Day names, starting with the day of the epoch (a Thursday)
+	private static final String[] DAY_NAMES = { "Thu", "Fri", "Sat", "Sun", "Mon", "Tue", "Wed" };
+
+	private static final String[] MONTH_NAMES =
+		{ "Jan", "Feb", "Mar", "Apr", "May", "Jun", "Jul", "Aug", "Sep", "Oct", "Nov", "Dec" };
+
+	private static final long SECONDS_PER_DAY = 86400;
+
+	// SimpleDateFormat is not thread-safe: each thread keeps its own, by pattern
+	private static final ThreadLocal<Map<String, SimpleDateFormat>> FORMATS =
+			new ThreadLocal<Map<String, SimpleDateFormat>>()
+	{
+		@Override
+		protected Map<String, SimpleDateFormat> initialValue()
+		{
+			return new HashMap<String, SimpleDateFormat>();
+		}
+	};
+
+	// Current date, formatted once per second
+	private static volatile CachedDate currentDate = new CachedDate(0);
+
 	/**
 	 * This class should not be instantiated.
 	 */
@@ -59,7 +94,7 @@ public final class DateUtil
 	/**
 	 * Parses a date value. The formats used for parsing the date value are
 	 * retrieved from the default http params.
-	 * 
+	 *
 	 * @param dateValue
 	 *            the date value to parse
 	 * @return the parsed date
@@ -69,12 +104,24 @@ public final class DateUtil
 	 */
 	public static Date parseDate(String dateValue)
 	{
-		return parseDate(dateValue, null, null);
+		if (dateValue == null)
+		{
+			throw new IllegalArgumentException("dateValue is null");
+		}
+
+		long seconds = parseSeconds(dateValue);
+
+		if (seconds == INVALID_DATE)
+		{
+			throw new RuntimeException("Unable to parse the date " + dateValue);
+		}
+
+		return new Date(seconds * 1000);
 	}
 
 	/**
 	 * Parses the date value using the given date formats.
-	 * 
+	 *
 	 * @param dateValue
 	 *            the date value to parse
 	 * @param dateFormats
@@ -91,7 +138,7 @@ public final class DateUtil
 
 	/**
 	 * Parses the date value using the given date formats.
-	 * 
+	 *
 	 * @param dateValue
 	 *            the date value to parse
 	 * @param dateFormats
@@ -129,19 +176,11 @@ public final class DateUtil
 			dateValue = dateValue.substring(1, dateValue.length() - 1);
 		}
 
-		SimpleDateFormat dateParser = null;
 		for (String format : dateFormats)
 		{
-			if (dateParser == null)
-			{
-				dateParser = new SimpleDateFormat(format, Locale.US);
-				dateParser.setTimeZone(TimeZone.getTimeZone("GMT"));
-				dateParser.set2DigitYearStart(startDate);
-			}
-			else
-			{
-				dateParser.applyPattern(format);
-			}
+			SimpleDateFormat dateParser = getFormat(format);
+			dateParser.set2DigitYearStart(startDate);
+
 			try
 			{
 				return dateParser.parse(dateValue);
@@ -156,9 +195,48 @@ public final class DateUtil
 		throw new RuntimeException("Unable to parse the date " + dateValue);
 	}
 
+	/**
+	 * Parses a date value into seconds since the epoch. RFC 1123 dates, then
+	 * RFC 1036 and <code>asctime()</code> dates, are parsed by hand; other
+	 * spellings fall back to {@link #parseDate(String, Collection, Date)}.
+	 * Two digit years more than 50 years in the future are placed in the
+	 * previous century (RFC 7231 section 7.1.1.1).
+	 *
+	 * @param dateValue
+	 *            the date value to parse
+	 * @return the date in seconds since the epoch, or {@link #INVALID_DATE}
+	 *         if the value could not be parsed
+	 */
+	public static long parseSeconds(String dateValue)
+	{
+		long seconds = parseRfc1123(dateValue);
+
+		if (seconds == INVALID_DATE)
+		{
+			seconds = parseRfc1036(dateValue);
+		}
+		if (seconds == INVALID_DATE)
+		{
+			seconds = parseAsctime(dateValue);
+		}
+		if (seconds == INVALID_DATE)
+		{
+			try
+			{
+				seconds = floorDiv(parseDate(dateValue, null, null).getTime(), 1000);
+			}
+			catch (RuntimeException e)
+			{
+				// unparsable date
+			}
+		}
+
+		return seconds;
+	}
+
 	/**
 	 * Formats the given date according to the RFC 1123 pattern.
-	 * 
+	 *
 	 * @param date
 	 *            The date to format.
 	 * @return An RFC 1123 formatted date string.
@@ -166,14 +244,73 @@ public final class DateUtil
 	 */
 	public static String formatDate(Date date)
 	{
-		return formatDate(date, PATTERN_RFC1123);
+		if (date == null)
+		{
+			throw new IllegalArgumentException("date is null");
+		}
+
+		return formatDate(date.getTime());
+	}
+
+	/**
+	 * Formats the given time according to the RFC 1123 pattern, without
+	 * {@link SimpleDateFormat}.
+	 *
+	 * @param millis
+	 *            The time to format, in milliseconds since the epoch.
+	 * @return An RFC 1123 formatted date string.
+	 * @see #PATTERN_RFC1123
+	 */
+	public static String formatDate(long millis)
+	{
+		long seconds = floorDiv(millis, 1000);
+		long days = floorDiv(seconds, SECONDS_PER_DAY);
+		int secondOfDay = (int) (seconds - days * SECONDS_PER_DAY);
+
+		// Civil date from days since the epoch (proleptic Gregorian calendar)
+		long z = days + 719468;
+		long era = (z >= 0 ? z : z - 146096) / 146097;
+		int dayOfEra = (int) (z - era * 146097);
+		int yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+		int dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+		int mp = (5 * dayOfYear + 2) / 153;
+		int day = dayOfYear - (153 * mp + 2) / 5 + 1;
+		int month = mp < 10 ? mp + 3 : mp - 9;
+		long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+
+		if (year < 0 || year > 9999)
+		{
+			return formatDate(new Date(millis), PATTERN_RFC1123);
+		}
+
+		char[] buf = new char[29];
+		DAY_NAMES[(int) floorMod(days, 7)].getChars(0, 3, buf, 0);
+		buf[3] = ',';
+		buf[4] = ' ';
+		putDigits(buf, 5, day, 2);
+		buf[7] = ' ';
+		MONTH_NAMES[month - 1].getChars(0, 3, buf, 8);
+		buf[11] = ' ';
+		putDigits(buf, 12, (int) year, 4);
+		buf[16] = ' ';
+		putDigits(buf, 17, secondOfDay / 3600, 2);
+		buf[19] = ':';
+		putDigits(buf, 20, secondOfDay / 60 % 60, 2);
+		buf[22] = ':';
+		putDigits(buf, 23, secondOfDay % 60, 2);
+		buf[25] = ' ';
+		buf[26] = 'G';
+		buf[27] = 'M';
+		buf[28] = 'T';
+
+		return new String(buf);
 	}
 
 	/**
 	 * Formats the given date according to the specified pattern. The pattern
 	 * must conform to that used by the {@link SimpleDateFormat simple date
 	 * format} class.
-	 * 
+	 *
 	 * @param date
 	 *            The date to format.
 	 * @param pattern
@@ -194,9 +331,221 @@ public final class DateUtil
 			throw new IllegalArgumentException("pattern is null");
 		}
 
-		SimpleDateFormat formatter = new SimpleDateFormat(pattern, Locale.US);
-		formatter.setTimeZone(GMT);
-		return formatter.format(date);
+		return getFormat(pattern).format(date);
+	}
+
+	/**
+	 * Returns the current date in RFC 1123 format. The string is formatted at
+	 * most once per second and shared by all threads.
+	 *
+	 * @return the current date, as sent in the Date header
+	 */
+	public static String getCurrentDate()
+	{
+		long now = System.currentTimeMillis();
+		CachedDate cached = currentDate;
+
+		if (floorDiv(now, 1000) != cached.seconds)
+		{
+			cached = new CachedDate(now);
+			currentDate = cached;
+		}
+
+		return cached.text;
+	}
+
+	/**
+	 * Returns the ISO-8859-1 bytes of the current date if the given string is
+	 * the one last returned by {@link #getCurrentDate()}. The array is shared
+	 * and must not be modified.
+	 *
+	 * @param date
+	 *            a date string
+	 * @return the encoded date, or <code>null</code> if the string is not the
+	 *         cached current date
+	 */
+	public static byte[] getEncodedDate(String date)
+	{
+		CachedDate cached = currentDate;
+
+		return (cached.text == date) ? cached.bytes : null;
+	}
+
+	// Parses "Sun, 06 Nov 1994 08:49:37 GMT"
+	private static long parseRfc1123(String s)
+	{
+		if (s.length() != 29 || s.charAt(3) != ',' || s.charAt(4) != ' ' || s.charAt(7) != ' ' || s.charAt(11) != ' '
+				|| s.charAt(16) != ' ' || !s.regionMatches(25, " GMT", 0, 4))
+		{
+			return INVALID_DATE;
+		}
+
+		return toSeconds(parseDigits(s, 12, 4), parseMonth(s, 8), parseDigits(s, 5, 2), s, 17);
+	}
+
+	// Parses "Sunday, 06-Nov-94 08:49:37 GMT"
+	private static long parseRfc1036(String s)
+	{
+		int comma = s.indexOf(',');
+
+		if (comma < 6 || s.length() != comma + 24 || s.charAt(comma + 1) != ' ' || s.charAt(comma + 4) != '-'
+				|| s.charAt(comma + 8) != '-' || s.charAt(comma + 11) != ' ' || !s.regionMatches(comma + 20, " GMT", 0, 4))
+		{
+			return INVALID_DATE;
+		}
+
+		int year = parseDigits(s, comma + 9, 2);
+
+		if (year >= 0)
+		{
+			// Two digit year: no more than 50 years in the future
+			long now = System.currentTimeMillis() / 1000;
+			year += 2000;
+
+			if (toSeconds(year, 1, 1, "00:00:00", 0) > now + 50L * 365 * SECONDS_PER_DAY)
+			{
+				year -= 100;
+			}
+		}
+
+		return toSeconds(year, parseMonth(s, comma + 5), parseDigits(s, comma + 2, 2), s, comma + 12);
+	}
+
+	// Parses "Sun Nov  6 08:49:37 1994"
+	private static long parseAsctime(String s)
+	{
+		if (s.length() != 24 || s.charAt(3) != ' ' || s.charAt(7) != ' ' || s.charAt(10) != ' ' || s.charAt(19) != ' ')
+		{
+			return INVALID_DATE;
+		}
+
+		int day = (s.charAt(8) == ' ') ? parseDigits(s, 9, 1) : parseDigits(s, 8, 2);
+
+		return toSeconds(parseDigits(s, 20, 4), parseMonth(s, 4), day, s, 11);
+	}
+
+	// Converts a date, with its "HH:mm:ss" time at the given offset, into
+	// seconds since the epoch
+	private static long toSeconds(int year, int month, int day, String s, int timeOffset)
+	{
+		if (year < 0 || month < 1 || day < 1 || day > 31 || s.charAt(timeOffset + 2) != ':'
+				|| s.charAt(timeOffset + 5) != ':')
+		{
+			return INVALID_DATE;
+		}
+
+		int hour = parseDigits(s, timeOffset, 2);
+		int minute = parseDigits(s, timeOffset + 3, 2);
+		int second = parseDigits(s, timeOffset + 6, 2);
+
+		if (hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 60)
+		{
+			return INVALID_DATE;
+		}
+
+		// Days since the epoch from a civil date (proleptic Gregorian calendar)
+		long y = (month <= 2) ? year - 1 : year;
+		long era = (y >= 0 ? y : y - 399) / 400;
+		int yearOfEra = (int) (y - era * 400);
+		int dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+		int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+		long days = era * 146097 + dayOfEra - 719468;
+
+		return days * SECONDS_PER_DAY + hour * 3600 + minute * 60 + second;
+	}
+
+	// Returns the month (1 to 12) named by the three letters at the given
+	// offset, or 0 if the name is unknown
+	private static int parseMonth(String s, int offset)
+	{
+		for (int i = 0; i < MONTH_NAMES.length; i++)
+		{
+			if (s.regionMatches(true, offset, MONTH_NAMES[i], 0, 3))
+			{
+				return i + 1;
+			}
+		}
+
+		return 0;
+	}
+
+	// Returns the number written with the given count of digits at the given
+	// offset, or -1 if one of them is not a digit
+	private static int parseDigits(String s, int offset, int count)
+	{
+		int value = 0;
+
+		for (int i = offset; i < offset + count; i++)
+		{
+			int digit = s.charAt(i) - '0';
+
+			if (digit < 0 || digit > 9)
+			{
+				return -1;
+			}
+
+			value = value * 10 + digit;
+		}
+
+		return value;
+	}
+
+	// Writes a number with the given count of digits, padded with zeros
+	private static void putDigits(char[] buf, int offset, int value, int count)
+	{
+		for (int i = offset + count - 1; i >= offset; i--)
+		{
+			buf[i] = (char) ('0' + value % 10);
+			value /= 10;
+		}
+	}
+
+	private static long floorDiv(long x, long y)
+	{
+		long q = x / y;
+
+		return (x % y < 0) ? q - 1 : q;
+	}
+
+	private static long floorMod(long x, long y)
+	{
+		return x - floorDiv(x, y) * y;
+	}
+
+	// Returns this thread's formatter for the given pattern
+	private static SimpleDateFormat getFormat(String pattern)
+	{
+		Map<String, SimpleDateFormat> formats = FORMATS.get();
+		SimpleDateFormat format = formats.get(pattern);
+
+		if (format == null)
+		{
+			format = new SimpleDateFormat(pattern, Locale.US);
+			format.setTimeZone(GMT);
+			formats.put(pattern, format);
+		}
+
+		return format;
+	}
+
+	// The current date, truncated to the second, as a string and as bytes
+	private static final class CachedDate
+	{
+		final long seconds;
+		final String text;
+		final byte[] bytes;
+
+		CachedDate(long millis)
+		{
+			this.seconds = floorDiv(millis, 1000);
+			this.text = formatDate(this.seconds * 1000);
+			this.bytes = new byte[this.text.length()];
+
+			for (int i = 0; i < this.bytes.length; i++)
+			{
+				this.bytes[i] = (byte) this.text.charAt(i);
+			}
+		}
 	}
 
-}
\ No newline at end of file
+}
@@ -1,11 +1,8 @@
 package util;
 
-import java.io.UnsupportedEncodingException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.regex.Pattern; 
-import java.util.regex.Matcher; 
 
 /**
  * Cette classe comporte une panoplie de fonctions utilitaires en rapport avec le traitement des chanes de caractres.
@@ -16,54 +13,162 @@ import java.util.regex.Matcher;
  */
 public class StringUtil
 {
+	/**
+	 * Indique si les balayages d'octets examinent huit octets  la fois (vrai par dfaut). La proprit systme 
+	 *  http.wordScan=false  les ramne  un octet  la fois, p. ex. pour comparer les deux versions.
+	 */
+	public static final boolean WORD_SCAN = Boolean.parseBoolean(System.getProperty("http.wordScan", "true"));
+	
+	// Octet 0x01 et bit de poids fort rpts dans chacun des huit octets d'un mot
+	private static final long ONES = 0x0101010101010101L;
+	private static final long HIGH_BITS = 0x8080808080808080L;
+	
+	// Longueur d'une squence UTF-8 valide selon son premier octet (RFC 3629), 0 pour un octet qui ne peut 
+	// pas commencer une squence (octet de continuation, C0, C1, F5  FF)
+	private static final byte[] UTF8_LEAD_LENGTHS = new byte[256];
+	
+	// Plus petit point de code permis pour chaque longueur de squence UTF-8 (rejette les formes trop longues)
+	private static final int[] UTF8_MIN_CODE_POINTS = {0, 0, 0x80, 0x800, 0x10000};
+	
+	// Valeur des chiffres hexadcimaux ASCII, -1 pour les autres caractres
+	private static final byte[] HEX_VALUES = new byte[128];
+	
+	static
+	{
+		for (int b = 0; b < 256; b++)
+		{
+			UTF8_LEAD_LENGTHS[b] = (byte) (b < 0x80 ? 1 : b < 0xC2 ? 0 : b < 0xE0 ? 2 : b < 0xF0 ? 3 : b < 0xF5 ? 4 : 0);
+		}
+		
+		for (int c = 0; c < 128; c++)
+		{
+			HEX_VALUES[c] = (byte) Character.digit(c, 16);
+		}
+	}
 
 	/**
-	 * Convertit une chane de caractres chaps en tableau d'octets.
+	 * Dcode une chane de caractres chapps (p. ex.  caf%C3%A9 ) en une seule passe. Les octets obtenus sont 
+	 * interprts en UTF-8 s'ils forment une squence UTF-8 valide, en ISO-8859-1 sinon. Un  %  qui n'est pas 
+	 * suivi de deux chiffres hexadcimaux est gard tel quel, et un caractre non ASCII est remplac par  ? .
 	 * 
-	 * @param text la chane de caractres chaps  convertir
-	 * @return le tableau de bytes rsultant de la conversion
+	 * @param text la chane de caractres chapps  dcoder
+	 * @return la chane dcode; la chane d'entre elle-mme si elle n'a rien  dcoder
 	 */
-	public static byte[] unescape(String text)
+	public static String unescapeToString(String text)
 	{
-		Pattern pHexByte = Pattern.compile("([^%]*)%([0123456789ABCDEF]{2})", Pattern.CASE_INSENSITIVE);
-		Matcher mHexByte = pHexByte.matcher(text);
-
-		ArrayList<Byte> byteList = new ArrayList<Byte>();
-
-		try
+		int length = text.length();
+		int start = 0;
+		
+		// Rien n'est allou tant qu'il n'y a ni squence d'chappement ni caractre non ASCII
+		while (start < length)
 		{
-			int lastMatchEndPos = 0;
+			char c = text.charAt(start);
 			
-			while (mHexByte.find())
-			{
-				lastMatchEndPos = mHexByte.end();
-
-				for (byte b : mHexByte.group(1).getBytes("ASCII"))
-				{
-					byteList.add(b);
-				}
-
-				byteList.add((byte)Integer.parseInt(mHexByte.group(2), 16));
-			}
-
-			for (byte b : text.substring(lastMatchEndPos, text.length()).getBytes("ASCII"))
+			if (c > 0x7F || (c == '%' && isEscape(text, start)))
 			{
-				byteList.add(b);
+				break;
 			}
+			
+			start++;
 		}
-		catch (UnsupportedEncodingException e)
+		
+		if (start == length)
 		{
-			e.printStackTrace();
+			return text;
 		}
 		
-		byte[] bytes = new byte[byteList.size()];
-
-		for (int i = 0; i < byteList.size(); i++)
+		char[] chars = new char[length];
+		text.getChars(0, start, chars, 0);
+		
+		int count = unescape(text, start, chars, true);
+		
+		if (count < 0)
 		{
-			bytes[i] = byteList.get(i);
+			count = unescape(text, start, chars, false);
 		}
-
-		return bytes;
+		
+		return new String(chars, 0, count);
+	}
+	
+	// Dcode la chane  partir de la position spcifie, en UTF-8 ou en ISO-8859-1. Retourne le nombre de 
+	// caractres du tableau, ou -1 si les octets ne forment pas une squence UTF-8 valide.
+	private static int unescape(String text, int start, char[] chars, boolean utf8)
+	{
+		int length = text.length();
+		int count = start;
+		
+		// Octets de continuation attendus, point de code en cours et plus petit point de code permis
+		int pending = 0;
+		int codePoint = 0;
+		int minCodePoint = 0;
+		
+		for (int i = start; i < length; i++)
+		{
+			char c = text.charAt(i);
+			int b;
+			
+			if (c == '%' && isEscape(text, i))
+			{
+				b = HEX_VALUES[text.charAt(i + 1)] << 4 | HEX_VALUES[text.charAt(i + 2)];
+				i += 2;
+			}
+			else
+			{
+				b = (c > 0x7F) ? '?' : c;
+			}
+			
+			if (!utf8 || (pending == 0 && b < 0x80))
+			{
+				chars[count++] = (char) b;
+			}
+			else if (pending == 0)
+			{
+				int sequenceLength = UTF8_LEAD_LENGTHS[b];
+				
+				if (sequenceLength == 0)
+				{
+					return -1;
+				}
+				
+				pending = sequenceLength - 1;
+				codePoint = b & (0xFF >> (sequenceLength + 1));
+				minCodePoint = UTF8_MIN_CODE_POINTS[sequenceLength];
+			}
+			else
+			{
+				if ((b & 0xC0) != 0x80)
+				{
+					return -1;
+				}
+				
+				codePoint = codePoint << 6 | (b & 0x3F);
+				
+				if (--pending == 0)
+				{
+					if (codePoint < minCodePoint || codePoint > Character.MAX_CODE_POINT 
+							|| (codePoint >= Character.MIN_SURROGATE && codePoint <= Character.MAX_SURROGATE))
+					{
+						return -1;
+					}
+					
+					count += Character.toChars(codePoint, chars, count);
+				}
+			}
+		}
+		
+		return (pending == 0) ? count : -1;
+	}
+	
+	// Indique si le  %   la position spcifie est suivi de deux chiffres hexadcimaux
+	private static boolean isEscape(String text, int i)
+	{
+		return i + 2 < text.length() && isHexDigit(text.charAt(i + 1)) && isHexDigit(text.charAt(i + 2));
+	}
+	
+	// Indique si le caractre est un chiffre hexadcimal ASCII
+	private static boolean isHexDigit(char c)
+	{
+		return c < 128 && HEX_VALUES[c] >= 0;
 	}
 	
 	/**
@@ -222,103 +327,35 @@ public class StringUtil
 	}
 
 	/**
-	 * Indique si un tableau de bytes peut reprsenter une chane UTF-8 valide.
+	 * Indique si les huit octets d'un mot sont des caractres ASCII imprimables, espace compris (0x20  0x7E).
 	 * 
-	 * @param bytes le tableau de bytes  valider
-	 * @return vrai si le tableau de bytes peut reprsenter une chane UTF-8 valide 
+	 * @param word huit octets lus d'un coup
+	 * @return vrai si tous les octets sont imprimables
 	 */
-	public static boolean isValidUtf8(byte[] bytes)
+	public static boolean isPrintableAscii(long word)
 	{
-		//  Bits  Pattern
-		//  ----  -------
-		//    7   0xxxxxxx
-		//   11   110xxxxx 10xxxxxx
-		//   16   1110xxxx 10xxxxxx 10xxxxxx
-		//   21   11110xxx 10xxxxxx 10xxxxxx 10xxxxxx
-		//   26   111110xx 10xxxxxx 10xxxxxx 10xxxxxx 10xxxxxx
-		//   32   111111xx 10xxxxxx 10xxxxxx 10xxxxxx 10xxxxxx 10xxxxxx
-
-		int sLen;
-		int n = 0;
-
-		// Indique la longueur d'une squence UTF-8 en fonction  
-		// des six bits les plus significatifs du premier octet
-		int[] UTF8len = 
-			{
-				1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1,
-				1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1,
-				0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0,
-				2, 2, 2, 2, 2, 2, 2, 2, 3, 3, 3, 3, 4, 4, 5, 6
-			};
-
-		while(n < bytes.length)
-		{
-			sLen = UTF8len[(bytes[n] >> 2) & 0x3F];
-
-			if (sLen == 0)
-			{
-				// erreur : 10xxxxxx se trouve normalement au milieur d'une squence UTF-8 
-				return false;
-			}
-
-			while (sLen - 1 > 0)
-			{
-				sLen--;
-				if (n == bytes.length - 1)
-				{
-					return false;
-				}
-				n++;
-				if ((bytes[n] & 0xC0) != 0x80) 
-				{
-					// erreur : devrait tre 10xxxxxx
-					return false;
-				}
-			}
-			n++;
-		}
-		return true;
+		return !hasByteOutside(word, 0x20, 0x7E);
 	}
 	
 	/**
-	 * Indique si un tableau de bytes peut reprsenter une chane ASCII valide.
+	 * Indique si les huit octets d'un mot sont des caractres ASCII visibles, sans espace (0x21  0x7E).
 	 * 
-	 * @param bytes le tableau de bytes  valider
-	 * @return vrai si le tableau de bytes peut reprsenter une chane ASCII valide 
+	 * @param word huit octets lus d'un coup
+	 * @return vrai si tous les octets sont visibles
 	 */
-	public static boolean isAscii(byte[] bytes)
+	public static boolean isVisibleAscii(long word)
 	{
-		for(int i = 0; i < bytes.length; i++)
-		{
-			if ((bytes[i] & 0x80) > 0)
-			{
-				return false;
-			}
-		}
-
-		return true;
+		return !hasByteOutside(word, 0x21, 0x7E);
 	}
 	
-	/**
-	 * Convertit un tableau de bytes en chane avec l'encodage spcifi.
-	 * 
-	 * @param bytes tableau de bytes  convertir
-	 * @param encoding encodage pour la conversion
-	 * @return chane rsultant de la conversion
-	 */
-	public static String bytesToString(byte[] bytes, String encoding)
+	// Indique si l'un des octets du mot est infrieur  min ou suprieur  max (0 < min <= max < 0x80). 
+	// Un octet hors limites allume son bit de poids fort dans l'une des deux expressions; les retenues 
+	// ne peuvent que signaler  tort un octet voisin, ce qui fait seulement reprendre l'examen octet par octet.
+	private static boolean hasByteOutside(long word, int min, int max)
 	{
-		String str = null;
-		try
-		{
-			str = new String(bytes, encoding);
-		}
-		catch (UnsupportedEncodingException e) 
-		{
-			System.err.println("Unsupported encoding : " + encoding);
-			e.printStackTrace();
-		}
+		long below = (word - ONES * min) & ~word;
+		long above = (word + ONES * (0x7F - max)) | word;
 		
-		return str;
+		return ((below | above) & HIGH_BITS) != 0;
 	}
 }
\ No newline at end of file